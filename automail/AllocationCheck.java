@@ -0,0 +1,188 @@
+package automail;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import exceptions.BreakingFragileItemException;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import strategies.Automail;
+import strategies.IMailPool;
+
+/**
+ * Checks that a run's tick loop allocates nothing once it has warmed up, so long runs
+ * do not keep the young generation busy.
+ * <p>
+ * Runs the configuration in automail.properties a few times, with logging off, so the
+ * step paths are compiled, then runs it a few more times counting the bytes the
+ * simulation thread allocates in each part of every tick: the mail source,
+ * MailPool.step, Robot.step and IMailDelivery.deliver. The first quarter of each
+ * measured run is left out, while the pool and its queues grow to their working size.
+ * The JVM itself sometimes allocates on the thread, as when compiled code is replaced,
+ * so each part is reported by its least allocating run. Exits with status 1 if
+ * MailPool.step, Robot.step or IMailDelivery.deliver allocated. The mail source is only
+ * reported: arrivals deepen the pool, whose queues grow to hold them. With
+ * Mail_Store=columnar MailPool.step makes a MailItem view of each item it hands out,
+ * which the check reports as it should.
+ * Usage: AllocationCheck [warmupRuns] [measuredRuns] [seed]
+ */
+public class AllocationCheck {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    /** What reading the counter twice allocates itself, taken off every reading */
+    private static long overhead;
+
+    /** Bytes allocated in one part of the tick, and how many ticks allocated any */
+    private static final class Tally {
+        final String name;
+        /** Whether this part has to allocate nothing for the check to pass */
+        final boolean checked;
+        long bytes;
+        int ticks;
+
+        Tally(String name, boolean checked) {
+            this.name = name;
+            this.checked = checked;
+        }
+
+        void add(long allocated) {
+            if (allocated > 0) {
+                bytes += allocated;
+                ticks++;
+            }
+        }
+
+        /** Keeps whichever of this and another run's tally allocated less */
+        void least(Tally other) {
+            if (other.bytes < bytes) {
+                bytes = other.bytes;
+                ticks = other.ticks;
+            }
+        }
+    }
+
+    /** Counts what each delivery allocates, so it can be told apart from the rest of Robot.step */
+    private static final class CountingDelivery implements IMailDelivery {
+        private final IMailDelivery delivery;
+        long bytes;
+
+        CountingDelivery(IMailDelivery delivery) {
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void deliver(MailItem mailItem) {
+            long before = allocated();
+            delivery.deliver(mailItem);
+            bytes += allocated() - before - overhead;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ReflectiveOperationException {
+        int warmupRuns = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int measuredRuns = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        SimulationConfig config = SimulationConfig.fromProperties(SimulationConfig.loadProperties("automail.properties"));
+        if (args.length > 2) {
+            config.seed = Integer.parseInt(args[2]);
+        }
+        config.headless();
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            System.out.println("This JVM cannot count allocated bytes");
+            System.exit(2);
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        overhead = overhead();
+
+        for (int i = 0; i < warmupRuns; i++) {
+            run(config, null);
+        }
+        Tally[] tallies = null;
+        int ticks = 0;
+        for (int i = 0; i < Math.max(measuredRuns, 1); i++) {
+            Tally[] run = { new Tally("Mail source step", false), new Tally("MailPool.step", true),
+                    new Tally("Robot.step", true), new Tally("IMailDelivery.deliver", true) };
+            ticks = run(config, run);
+            if (tallies == null) {
+                tallies = run;
+            } else {
+                for (int part = 0; part < run.length; part++) tallies[part].least(run[part]);
+            }
+        }
+
+        boolean allocated = false;
+        System.out.printf("%d ticks measured in each of %d runs, after %d warm up runs%n",
+                ticks, Math.max(measuredRuns, 1), warmupRuns);
+        for (Tally tally : tallies) {
+            System.out.printf("%-22s %10d bytes in %6d ticks%s%n", tally.name, tally.bytes, tally.ticks,
+                    tally.checked ? "" : " (not checked)");
+            allocated |= tally.checked && tally.bytes > 0;
+        }
+        System.out.println(allocated ? "FAILED: the tick loop allocates" : "OK: the tick loop does not allocate");
+        System.exit(allocated ? 1 : 0);
+    }
+
+    /**
+     * Steps a run tick by tick, as the tick engine does
+     * @param tallies where to count allocation, or null to just run
+     * @return the number of ticks counted
+     */
+    private static int run(SimulationConfig config, Tally[] tallies) throws IOException, ReflectiveOperationException {
+        SimulationContext context = new SimulationContext(config);
+        IMailPool mailPool = Simulation.createMailPool(context);
+        CountingDelivery delivery = new CountingDelivery(new Simulation.ReportDelivery(context));
+        Automail automail = new Automail(mailPool, delivery, config.robots, context);
+        MailGenerator mailSource = context.getMailStore() != null ? new ColumnarMailGenerator(context, mailPool)
+                : config.streamingMail ? new StreamingMailGenerator(context, mailPool, config.fragileEnabled)
+                : new MailGenerator(context, mailPool);
+        context.setUp(automail, mailSource);
+        mailSource.generateAllMail(config.fragileEnabled);
+
+        Robot[] robots = automail.robots;
+        int measured = 0;
+        int from = context.clock.LAST_DELIVERY_TIME / 4;
+        try {
+            while (context.getDelivered() != mailSource.totalMail()) {
+                boolean counting = tallies != null && context.clock.Time() >= from;
+                long start = allocated();
+                mailSource.step();
+                long sourced = allocated();
+                mailPool.step();
+                long pooled = allocated();
+                long delivered = delivery.bytes;
+                for (int i = 0; i < robots.length; i++) {
+                    robots[i].step();
+                }
+                long stepped = allocated();
+                if (counting) {
+                    long deliveries = delivery.bytes - delivered;
+                    tallies[0].add(sourced - start - overhead);
+                    tallies[1].add(pooled - sourced - overhead);
+                    tallies[2].add(stepped - pooled - overhead - deliveries);
+                    tallies[3].add(deliveries);
+                    measured++;
+                }
+                context.clock.Tick();
+            }
+        } catch (ExcessiveDeliveryException | ItemTooHeavyException | BreakingFragileItemException e) {
+            throw new IllegalStateException("Run failed", e);
+        } finally {
+            context.log.close();
+        }
+        return measured;
+    }
+
+    /** What reading the counter itself allocates */
+    private static long overhead() {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = allocated();
+            least = Math.min(least, allocated() - before);
+        }
+        return least;
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,183 @@
+package automail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import strategies.FleetStatistics;
+
+/**
+ * Simulates a campus of buildings, each with its own fleet, mail pool and mail. Buildings
+ * share nothing, so each runs as an independent shard on a worker thread and the campus
+ * takes about as long as its slowest building. Their results are merged at the end.
+ * <p>
+ * The campus is set in automail.properties. Buildings is how many there are, every other
+ * setting applies to each of them, and Building.N.Setting overrides a setting for building
+ * N, counting from 0, as in Building.3.Floors=40. Unless a building has its own Seed it
+ * gets Seed plus its number, so buildings with the same settings get different mail.
+ * Usage: Campus [threads]
+ */
+public class Campus {
+
+    /** The results of one building */
+    public static class Shard {
+        public final int building;
+        public final SimulationConfig config;
+        public final SeedSweep.Run run;
+        /** Latency of every delivery in the building */
+        public final LatencyHistogram latency;
+
+        Shard(int building, SimulationConfig config, SimulationContext context) {
+            this.building = building;
+            this.config = config;
+            this.run = new SeedSweep.Run(config.seed == null ? -1 : config.seed, context);
+            this.latency = context.getScores().getLatency();
+        }
+    }
+
+    /** The campus wide results, merged over every building that completed */
+    public static class Totals {
+        public final int buildings;
+        public final int failed;
+        public final long delivered;
+        /** When the last building made its last delivery */
+        public final int finalTime;
+        public final double score;
+        /** Items delivered per tick over the whole campus */
+        public final double throughput;
+        public final LatencyHistogram latency = new LatencyHistogram();
+        public final long normalPackageDelivered;
+        public final long cautionPackageDelivered;
+        public final long wrapUnwrapTime;
+
+        public Totals(List<Shard> shards) {
+            int failures = 0;
+            long items = 0;
+            int last = 0;
+            double total = 0;
+            long normal = 0;
+            long caution = 0;
+            long wrapUnwrap = 0;
+            for (Shard shard : shards) {
+                if (shard.run.failure != null) {
+                    failures++;
+                    continue;
+                }
+                items += shard.run.delivered;
+                last = Math.max(last, shard.run.finalTime);
+                total += shard.run.score;
+                latency.add(shard.latency);
+                FleetStatistics statistics = shard.run.statistics;
+                normal += statistics.normalPackageDelivered;
+                caution += statistics.cautionPackageDelivered;
+                wrapUnwrap += statistics.wrapUnwrapTime;
+            }
+            this.buildings = shards.size();
+            this.failed = failures;
+            this.delivered = items;
+            this.finalTime = last;
+            this.score = total;
+            this.throughput = last == 0 ? 0 : (double) items / last;
+            this.normalPackageDelivered = normal;
+            this.cautionPackageDelivered = caution;
+            this.wrapUnwrapTime = wrapUnwrap;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<SimulationConfig> buildings = buildings(SimulationConfig.loadProperties("automail.properties"));
+
+        long start = System.nanoTime();
+        List<Shard> shards = simulate(buildings, threads);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%8s %6s %6s %9s %10s %16s %8s %8s%n", "Building", "Floors", "Robots", "Delivered",
+                "Final time", "Score", "Mean", "p99");
+        for (Shard shard : shards) {
+            SeedSweep.Run run = shard.run;
+            if (run.failure != null) {
+                System.out.printf("%8d failed: %s%n", shard.building, run.failure);
+                continue;
+            }
+            System.out.printf("%8d %6d %6d %9d %10d %16.2f %8.2f %8d%n", shard.building, shard.config.floors,
+                    shard.config.robots, run.delivered, run.finalTime, run.score, run.meanLatency, run.p99Latency);
+        }
+        Totals totals = new Totals(shards);
+        System.out.printf("Campus of %d buildings, %d failed, %d threads, %.2f s%n",
+                totals.buildings, totals.failed, threads, elapsed / 1e9);
+        System.out.printf("Delivered: %d%n", totals.delivered);
+        System.out.printf("Final Delivery time: %d%n", totals.finalTime);
+        System.out.printf("Items per tick: %.4f%n", totals.throughput);
+        System.out.printf("Total Score: %.2f%n", totals.score);
+        LatencyHistogram latency = totals.latency;
+        if (latency.getCount() > 0) {
+            System.out.printf("Latency: mean %.2f, p50 %d, p95 %d, p99 %d, max %d%n", latency.getMean(),
+                    latency.percentile(50), latency.percentile(95), latency.percentile(99), latency.getMax());
+        }
+        System.out.printf("Delivered normally: %d, using caution: %d, wrap & unwrap time: %d%n",
+                totals.normalPackageDelivered, totals.cautionPackageDelivered, totals.wrapUnwrapTime);
+    }
+
+    /**
+     * @param automailProperties the campus settings, including any defaults
+     * @return the configuration of each building, in order
+     */
+    public static List<SimulationConfig> buildings(Properties automailProperties) {
+        int count = Integer.parseInt(automailProperties.getProperty("Buildings", "1").trim());
+        String seed = automailProperties.getProperty("Seed");
+        List<SimulationConfig> buildings = new ArrayList<SimulationConfig>(count);
+        for (int i = 0; i < count; i++) {
+            Properties building = new Properties();
+            for (String name : automailProperties.stringPropertyNames()) {
+                if (!name.startsWith("Building.")) building.setProperty(name, automailProperties.getProperty(name));
+            }
+            if (seed != null) {
+                building.setProperty("Seed", String.valueOf(Integer.parseInt(seed.trim()) + i));
+            }
+            String prefix = "Building." + i + ".";
+            for (String name : automailProperties.stringPropertyNames()) {
+                if (name.startsWith(prefix)) {
+                    building.setProperty(name.substring(prefix.length()), automailProperties.getProperty(name));
+                }
+            }
+            buildings.add(SimulationConfig.fromProperties(building));
+        }
+        return buildings;
+    }
+
+    /**
+     * Runs every building to completion with logging turned off
+     * @param buildings the configuration of each building, not changed
+     * @param threads the number of buildings to run at once
+     * @return the results in building order
+     */
+    public static List<Shard> simulate(List<SimulationConfig> buildings, int threads)
+            throws InterruptedException, ExecutionException {
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        try {
+            List<Future<Shard>> futures = new ArrayList<Future<Shard>>();
+            for (int i = 0; i < buildings.size(); i++) {
+                final int building = i;
+                final SimulationConfig config = buildings.get(i).copy().headless();
+                futures.add(workers.submit(new Callable<Shard>() {
+                    public Shard call() {
+                        return new Shard(building, config, Simulation.run(config));
+                    }
+                }));
+            }
+            List<Shard> shards = new ArrayList<Shard>(futures.size());
+            for (Future<Shard> future : futures) {
+                shards.add(future.get());
+            }
+            return shards;
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
@@ -1,22 +1,28 @@
 package automail;
 
+import java.io.IOException;
+
 import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
 
 
-import static automail.Simulation.STATISTICS_ENABLED;
-import static strategies.Automail.robots;
 
 public class CautionRobot extends Robot{
 
     private static final int REQUIRED_WRAP_TIME = 2;      //time required to wrap fragile item
     private static final int REQUIRED_UNWRAP_TIME = 1;    //time required to unwrap fragile item
+    private static final int NOT_UNWRAPPING = -1;
     private int wrapTime;
     private int unwrapTime; 
+    /** Shared by the fleet, tells each robot where the others are unwrapping */
+    private final FloorOccupancy occupancy;
+    /** The floor this robot is counted on in the occupancy, if any */
+    private int unwrappingFloor = NOT_UNWRAPPING;
 
-    public CautionRobot(IMailDelivery delivery, IMailPool mailPool) {
-        super(delivery, mailPool);
+    public CautionRobot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context, FloorOccupancy occupancy) {
+        super(delivery, mailPool, context);
+        this.occupancy = occupancy;
     }
 
     /**
@@ -54,7 +60,7 @@ public class CautionRobot extends Robot{
                 if(current_floor == Building.MAILROOM_LOCATION){
                     if (tube != null) {
                         mailPool.addToPool(tube);
-                        System.out.printf("T: %3d >  +addToPool [%s]%n", Clock.Time(), tube.toString());
+                        events.repool(context.clock.Time(), tube);
                         tube = null;
                     }
                     /** Tell the sorter the robot is ready */
@@ -74,6 +80,7 @@ public class CautionRobot extends Robot{
                 if(!isEmpty() && receivedDispatch){
                     receivedDispatch = false;
                     deliveryCounter = 0; // reset delivery counter
+                    planRoute();
                     setRoute();
                     if(fragileItem != null){
                         /** Reset wrapping time if receive a fragile item to deliver */
@@ -90,13 +97,11 @@ public class CautionRobot extends Robot{
             case DELIVERING:
                 if(current_floor == destination_floor){ // If already here check whether drop off or unwrap
                     /** Delivery complete, report this to the simulator! */
-                    if(fragileItem != null){
+                    if(fragileItem != null && target() == fragileItem){
                         changeState(RobotState.UNWRAPPING);
                     } else {
-                        if (STATISTICS_ENABLED){
-                            normalPackageDelivered++;
-                            normalPackageDeliveredWeight+=deliveryItem.getWeight();
-                        }
+                        normalPackageDelivered++;
+                        normalPackageDeliveredWeight+=deliveryItem.getWeight();
                         delivery.deliver(deliveryItem);
                         deliveryItem = null;
                         deliveryCounter++;
@@ -123,6 +128,7 @@ public class CautionRobot extends Robot{
                 }
                 break;
         }
+        updateOccupancy();
     }
 
     /**
@@ -131,11 +137,19 @@ public class CautionRobot extends Robot{
     @Override
     protected void setRoute() {
         /** Set the destination floor */
-        if (fragileItem == null) {
-            destination_floor = deliveryItem.getDestFloor();
-        } else {
-            destination_floor = fragileItem.getDestFloor();
+        destination_floor = target().getDestFloor();
+    }
+
+    /**
+     * The fragile item goes first, unless routes are swept and the hand item is for a lower floor
+     */
+    @Override
+    protected MailItem target() {
+        if (context.config.sweepRoutes && fragileItem != null && deliveryItem != null
+                && deliveryItem.getDestFloor() < fragileItem.getDestFloor()) {
+            return deliveryItem;
         }
+        return super.target();
     }
 
     /**
@@ -146,24 +160,99 @@ public class CautionRobot extends Robot{
         return (deliveryItem == null && tube == null && fragileItem == null);
     }
 
+    /**
+     * Moving robots may be frozen by an unwrapping neighbour, so nothing is skipped while
+     * any robot is unwrapping. Arriving at a fragile item's destination freezes the
+     * neighbours straight away, so that last move is not skipped either.
+     */
+    @Override
+    public int idleSteps() {
+        if (!occupancy.isEmpty()) {
+            return 0;
+        }
+        if (current_state == RobotState.WRAPPING) {
+            return wrapTime - 1;
+        }
+        if (current_state == RobotState.DELIVERING && fragileItem != null) {
+            return Math.max(super.idleSteps() - 1, 0);
+        }
+        return super.idleSteps();
+    }
+
+    @Override
+    public void skipSteps(int steps) {
+        assert(steps <= idleSteps());
+        if (current_state == RobotState.WRAPPING) {
+            wrapTime -= steps;
+        } else {
+            super.skipSteps(steps);
+        }
+    }
+
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        super.save(out);
+        out.writeInt(wrapTime);
+        out.writeInt(unwrapTime);
+    }
+
+    /**
+     * The occupancy is not saved, each robot enters it again from its own state
+     */
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        super.restore(in);
+        wrapTime = in.readInt();
+        unwrapTime = in.readInt();
+        updateOccupancy();
+    }
+
+    /**
+     * Only a robot with a fragile item, or unwrapping one, enters or leaves the occupancy
+     */
+    @Override
+    public boolean changesOccupancy() {
+        return fragileItem != null || current_state == RobotState.UNWRAPPING;
+    }
+
+    /**
+     * Moving robots wait for unwrapping neighbours
+     */
+    @Override
+    public boolean readsOccupancy() {
+        return current_state == RobotState.RETURNING || current_state == RobotState.DELIVERING;
+    }
+
     /**
      * Decide whether to wait for unwrapping fragile item
      */
     public boolean waitForUnwrap(){
-        for(Robot r: robots){
-            if(r.current_state.equals("UNWRAPPING") || (r.fragileItem!=null && r.current_floor == r.destination_floor)){
-                if((r.current_floor == current_floor+1) || (r.current_floor == current_floor-1)){
-                    return true;
-                }
-            }
+        return occupancy.unwrappingNextTo(current_floor);
+    }
+
+    /**
+     * Moves this robot's entry in the occupancy if it has started or stopped unwrapping,
+     * or is parked at the destination of the fragile item it is delivering. Called whenever the state, floor or
+     * special arm may have changed.
+     */
+    private void updateOccupancy() {
+        int floor = NOT_UNWRAPPING;
+        if (current_state == RobotState.UNWRAPPING
+                || (fragileItem != null && target() == fragileItem && current_floor == destination_floor)) {
+            floor = current_floor;
+        }
+        if (floor != unwrappingFloor) {
+            if (unwrappingFloor != NOT_UNWRAPPING) occupancy.leave(unwrappingFloor);
+            if (floor != NOT_UNWRAPPING) occupancy.enter(floor);
+            unwrappingFloor = floor;
         }
-        return false;
     }
 
     @Override
     public void addToSpecialHand(MailItem mailItem) throws ItemTooHeavyException {
         assert(fragileItem == null);
         fragileItem = mailItem;
+        updateOccupancy();
         if (fragileItem.weight > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
     }
 }
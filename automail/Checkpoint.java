@@ -0,0 +1,221 @@
+package automail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Saves the whole state of a run between ticks so it can be resumed later, and carries
+ * on exactly as it would have done. A snapshot holds the clock, the mail numbering and
+ * any MailStore, the deliveries and scores so far, the mail source's random source and
+ * the mail still to arrive, the pool's mail and waiting robots, and every robot.
+ * <p>
+ * Every interval ticks the state is copied into memory on the simulation thread, and
+ * a background thread writes the copy next to the file and renames it into place, so
+ * the tick loop does not wait for the disk and a crash never leaves half a snapshot.
+ * Logging, the engine, threads, metrics and tracing can be changed when resuming,
+ * anything that changes what happens in the run cannot.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x414d434b;
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final int interval;
+    private final ExecutorService writer;
+    private Future<?> writing;
+    /** The tick the next snapshot is due, -1 until the first tick */
+    private int next = -1;
+
+    /**
+     * @param file where snapshots are written, each replacing the last
+     * @param interval how many ticks apart snapshots are taken
+     */
+    public Checkpoint(File file, int interval) {
+        if (interval < 1) throw new IllegalArgumentException("Checkpoint interval must be at least 1 tick");
+        this.file = file;
+        this.interval = interval;
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "automail-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Takes a snapshot if one is due, called at the end of each tick
+     * @throws IOException if the previous snapshot could not be written
+     */
+    public void tick(SimulationContext context) throws IOException {
+        int now = context.clock.Time();
+        if (next < 0) next = (now / interval + 1) * interval;
+        if (now < next) return;
+        next = (now / interval + 1) * interval;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        save(context, bytes);
+        finishWriting();
+        writing = writer.submit(new Runnable() {
+            public void run() {
+                try {
+                    write(bytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the last snapshot to be written and stops the writer thread
+     */
+    public void close() throws IOException {
+        try {
+            finishWriting();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    private void finishWriting() throws IOException {
+        if (writing == null) return;
+        try {
+            writing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + file, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            throw new IOException("Could not write " + file, cause);
+        } finally {
+            writing = null;
+        }
+    }
+
+    private void write(ByteArrayOutputStream bytes) throws IOException {
+        File partial = new File(file.getPath() + ".part");
+        OutputStream out = new FileOutputStream(partial);
+        try {
+            bytes.writeTo(out);
+        } finally {
+            out.close();
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a snapshot of a run between ticks
+     */
+    public static void save(SimulationContext context, OutputStream stream) throws IOException {
+        SnapshotOutput out = new SnapshotOutput(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        Map<String, String> settings = settings(context);
+        out.writeInt(settings.size());
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            out.writeUTF(setting.getKey());
+            out.writeUTF(setting.getValue());
+        }
+        context.save(out);
+        checkpointable(context.getMailSource()).save(out);
+        checkpointable(context.getMailPool()).save(out);
+        Robot[] robots = context.getAutomail().robots;
+        out.writeInt(robots.length);
+        for (Robot robot : robots) robot.save(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot into a run that has been set up but not started, in place of generating its mail
+     */
+    public static void restore(SimulationContext context, File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            restore(context, stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot into a run that has been set up but not started, in place of generating its mail
+     */
+    public static void restore(SimulationContext context, InputStream stream) throws IOException {
+        Robot[] robots = context.getAutomail().robots;
+        SnapshotInput in = new SnapshotInput(new BufferedInputStream(stream, 1 << 16), robots);
+        if (in.readInt() != MAGIC) throw new IOException("Not an automail snapshot");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        Map<String, String> settings = settings(context);
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String name = in.readUTF();
+            String value = in.readUTF();
+            if (!value.equals(settings.get(name))) {
+                throw new IOException("Snapshot was taken with " + name + " " + value + ", not " + settings.get(name));
+            }
+        }
+        if (n != settings.size()) throw new IOException("Snapshot was taken with different settings");
+        context.restore(in);
+        checkpointable(context.getMailSource()).restore(in);
+        checkpointable(context.getMailPool()).restore(in);
+        if (in.readInt() != robots.length) throw new IOException("Snapshot was taken with a different fleet");
+        for (Robot robot : robots) robot.restore(in);
+    }
+
+    /**
+     * @throws IOException if the run cannot be checkpointed, so it fails before it starts
+     */
+    static void check(SimulationContext context) throws IOException {
+        checkpointable(context.getMailSource());
+        checkpointable(context.getMailPool());
+        if (context.config.seed == null && context.getMailSource() instanceof MailGenerator) {
+            throw new IOException("Checkpoints of generated mail need a fixed Seed");
+        }
+    }
+
+    /** Everything that changes what happens in the run, which has to match when it is resumed */
+    private static Map<String, String> settings(SimulationContext context) {
+        SimulationConfig config = context.config;
+        Map<String, String> settings = new LinkedHashMap<String, String>();
+        settings.put("Floors", String.valueOf(config.floors));
+        settings.put("Mail_to_Create", String.valueOf(config.mailToCreate));
+        settings.put("Mail_Max_Weight", String.valueOf(config.mailMaxWeight));
+        settings.put("Last_Delivery_Time", String.valueOf(config.lastDeliveryTime));
+        settings.put("Robots", String.valueOf(config.robots));
+        settings.put("Caution", String.valueOf(config.cautionEnabled));
+        settings.put("Fragile", String.valueOf(config.fragileEnabled));
+        settings.put("Routing", config.sweepRoutes ? "sweep" : "loaded");
+        settings.put("Seed", String.valueOf(config.seed));
+        settings.put("Workload_File", String.valueOf(config.workloadFile));
+        settings.put("MailPool", context.getMailPool().getClass().getName());
+        settings.put("Mail source", context.getMailSource().getClass().getName());
+        return settings;
+    }
+
+    private static ICheckpointable checkpointable(Object part) throws IOException {
+        if (!(part instanceof ICheckpointable)) {
+            throw new IOException(part.getClass().getName() + " cannot be saved in a snapshot");
+        }
+        return (ICheckpointable) part;
+    }
+}
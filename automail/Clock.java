@@ -3,16 +3,25 @@ package automail;
 public class Clock {
 	
 	/** Represents the current time **/
-    private static int Time = 0;
+    private int Time = 0;
     
     /** The threshold for the latest time for mail to arrive **/
-    public static int LAST_DELIVERY_TIME;
+    public final int LAST_DELIVERY_TIME;
 
-    public static int Time() {
+    public Clock(int lastDeliveryTime) {
+    	LAST_DELIVERY_TIME = lastDeliveryTime;
+    }
+
+    public int Time() {
     	return Time;
     }
     
-    public static void Tick() {
+    public void Tick() {
     	Time++;
     }
+
+    /** Moves the clock forward over ticks where nothing happens */
+    public void Advance(int ticks) {
+    	Time += ticks;
+    }
 }
@@ -0,0 +1,112 @@
+package automail;
+
+import java.io.IOException;
+
+import strategies.IMailPool;
+
+/**
+ * Generates the same mail as MailGenerator for the same seed, but into a MailStore.
+ * Arrivals are kept as an array of handles sorted by arrival time plus the offset of each
+ * time in it, rather than a map of lists of objects, and go into the pool as handles.
+ */
+public class ColumnarMailGenerator extends MailGenerator {
+
+    private final MailStore store;
+    /** Handles in arrival order, within a time in the order they were generated */
+    private int[] schedule;
+    /** Where each arrival time starts in the schedule, with one extra entry for the end */
+    private int[] scheduleStart;
+    /** The handle of the first item, the rest follow it in generation order */
+    private int first;
+    private int nextArrival;
+
+    /**
+     * @param context the simulation the mail is generated for, which holds the store
+     * @param mailPool where mail items go on arrival
+     */
+    public ColumnarMailGenerator(SimulationContext context, IMailPool mailPool) {
+        super(context, mailPool);
+        this.store = context.getMailStore();
+        this.nextArrival = 0;
+    }
+
+    /**
+     * Generates every item, drawing from the random source in the same order as MailGenerator
+     */
+    @Override
+    public void generateAllMail(boolean generateFragile) {
+        first = -1;
+        for (int i = 0; i < MAIL_TO_CREATE; i++) {
+            int dest_floor = generateDestinationFloor();
+            int arrival_time = generateArrivalTime();
+            int weight = generateWeight();
+            boolean isFragile = generateFragile && generateFragile();
+            int handle = store.add(dest_floor, arrival_time, weight, isFragile);
+            if (first < 0) first = handle;
+        }
+        buildSchedule();
+    }
+
+    /**
+     * Counting sort by arrival time keeps generation order within a time
+     */
+    private void buildSchedule() {
+        int last = context.clock.LAST_DELIVERY_TIME;
+        int[] count = new int[last + 2];
+        for (int i = 0; i < MAIL_TO_CREATE; i++) {
+            count[store.getArrivalTime(first + i)]++;
+        }
+        scheduleStart = new int[last + 2];
+        for (int t = 1; t < scheduleStart.length; t++) {
+            scheduleStart[t] = scheduleStart[t - 1] + count[t - 1];
+        }
+        int[] next = scheduleStart.clone();
+        schedule = new int[MAIL_TO_CREATE];
+        for (int i = 0; i < MAIL_TO_CREATE; i++) {
+            int handle = first + i;
+            schedule[next[store.getArrivalTime(handle)]++] = handle;
+        }
+    }
+
+    /**
+     * The mail itself is in the store, which is saved with the simulation
+     */
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        super.save(out);
+        out.writeInt(first);
+        out.writeInt(nextArrival);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        super.restore(in);
+        first = in.readInt();
+        nextArrival = in.readInt();
+        buildSchedule();
+    }
+
+    @Override
+    public int nextArrivalTime(int now) {
+        int last = context.clock.LAST_DELIVERY_TIME;
+        if (nextArrival < now) nextArrival = now;
+        while (nextArrival <= last && scheduleStart[nextArrival] == scheduleStart[nextArrival + 1]) {
+            nextArrival++;
+        }
+        return nextArrival <= last ? nextArrival : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void step() {
+        int now = context.clock.Time();
+        if (now < 0 || now > context.clock.LAST_DELIVERY_TIME) {
+            return;
+        }
+        boolean logging = context.log.isRecording();
+        for (int k = scheduleStart[now]; k < scheduleStart[now + 1]; k++) {
+            int handle = schedule[k];
+            if (logging) context.log.arrival(now, store.view(handle));
+            mailPool.addToPool(handle);
+        }
+    }
+}
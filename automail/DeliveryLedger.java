@@ -0,0 +1,67 @@
+package automail;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Records which mail items have been delivered.
+ * Items are keyed by their dense mail index, so checking for a duplicate
+ * is O(1) and the ledger holds one bit per item rather than the items themselves.
+ */
+public class DeliveryLedger implements ICheckpointable {
+
+    private BitSet delivered;
+    private int count;
+
+    /**
+     * @param expected roughly how many items will be delivered, used to size the ledger
+     */
+    public DeliveryLedger(int expected) {
+        delivered = new BitSet(Math.max(expected, 1));
+        count = 0;
+    }
+
+    /**
+     * Marks an item as delivered
+     * @param index the dense index of the mail item
+     * @return true if the item had not been delivered before
+     */
+    public boolean record(int index) {
+        if (delivered.get(index)) {
+            return false;
+        }
+        delivered.set(index);
+        count++;
+        return true;
+    }
+
+    /**
+     * @return whether the item with this index has been delivered
+     */
+    public boolean isDelivered(int index) {
+        return delivered.get(index);
+    }
+
+    /**
+     * @return the number of distinct items delivered so far
+     */
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        long[] words = delivered.toLongArray();
+        out.writeInt(count);
+        out.writeInt(words.length);
+        for (long word : words) out.writeLong(word);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        count = in.readInt();
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+        delivered = BitSet.valueOf(words);
+    }
+}
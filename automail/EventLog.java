@@ -0,0 +1,306 @@
+package automail;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the simulation log on a background thread.
+ * The simulation only copies a few ints and references into a batch, whole batches are
+ * handed to the writer thread, and all text formatting happens there. When a level is
+ * disabled the calls return straight away without formatting or recording anything.
+ */
+public class EventLog implements IEventListener {
+
+    /** How much of the run gets written out */
+    public enum Level {
+        /** Nothing at all */
+        OFF,
+        /** The configuration and the end of run results */
+        SUMMARY,
+        /** Every arrival, state change and delivery as well */
+        FULL
+    }
+
+    private static final byte ARRIVAL = 0;
+    private static final byte REPOOL = 1;
+    private static final byte STATE_CHANGE = 2;
+    private static final byte DISPATCH = 3;
+    private static final byte DELIVERY = 4;
+    private static final byte TEXT = 5;
+
+    private static final int BATCH_SIZE = 4096;
+    private static final int BATCHES = 4;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+
+    /** A block of events kept as parallel arrays so recording does not allocate */
+    private static final class Batch {
+        int size;
+        final byte[] type;
+        final int[] time;
+        final int[] a;
+        final int[] b;
+        final Object[] ref;
+        final Object[][] args;
+
+        Batch(int capacity) {
+            type = new byte[capacity];
+            time = new int[capacity];
+            a = new int[capacity];
+            b = new int[capacity];
+            ref = new Object[capacity];
+            args = new Object[capacity][];
+        }
+    }
+
+    private final Level level;
+    private final boolean full;
+    private final boolean summary;
+
+    private final BlockingQueue<Batch> free;
+    private final BlockingQueue<Batch> written;
+    /** Handed to the writer to tell it to finish */
+    private final Batch last = new Batch(0);
+    private Batch current;
+    private Thread writer;
+    /** Told about every event as well, whatever the level */
+    private IEventListener[] listeners = new IEventListener[0];
+    private volatile IOException failure;
+
+    /**
+     * Creates a log that writes to standard output
+     * @param level how much to write
+     */
+    public EventLog(Level level) {
+        this(level, new FileOutputStream(FileDescriptor.out));
+    }
+
+    /**
+     * @param level how much to write
+     * @param stream where the text goes
+     */
+    public EventLog(Level level, OutputStream stream) {
+        this.level = level;
+        this.full = level == Level.FULL;
+        this.summary = level != Level.OFF;
+        if (summary) {
+            free = new ArrayBlockingQueue<Batch>(BATCHES);
+            written = new ArrayBlockingQueue<Batch>(BATCHES + 1);
+            for (int i = 1; i < BATCHES; i++) free.add(new Batch(BATCH_SIZE));
+            current = new Batch(BATCH_SIZE);
+            final Writer out = new BufferedWriter(new OutputStreamWriter(stream), 1 << 16);
+            writer = new Thread(new Runnable() {
+                public void run() {
+                    drain(out);
+                }
+            }, "automail-event-log");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            free = null;
+            written = null;
+        }
+    }
+
+    /**
+     * @param name one of off, summary or full, in any case
+     * @return the matching level
+     */
+    public static Level parseLevel(String name) {
+        return Level.valueOf(name.trim().toUpperCase());
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @return whether per event lines are being written
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Passes every arrival, state change and delivery on to a listener as well, at any level
+     */
+    public void addListener(IEventListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    /**
+     * @return whether per event calls are written or listened to, so are worth making
+     */
+    public boolean isRecording() {
+        return full || listeners.length > 0;
+    }
+
+    @Override
+    public void arrival(int time, MailItem mailItem) {
+        if (full) record(ARRIVAL, time, 0, 0, mailItem, null);
+        for (IEventListener listener : listeners) listener.arrival(time, mailItem);
+    }
+
+    @Override
+    public void repool(int time, MailItem mailItem) {
+        if (full) record(REPOOL, time, 0, 0, mailItem, null);
+        for (IEventListener listener : listeners) listener.repool(time, mailItem);
+    }
+
+    @Override
+    public void stateChange(int time, int robot, int floor, boolean tube, Robot.RobotState from, Robot.RobotState to) {
+        if (full) record(STATE_CHANGE, time, robot, tubeFlag(tube) | from.ordinal() << 8 | to.ordinal() << 16, null, null);
+        for (IEventListener listener : listeners) listener.stateChange(time, robot, floor, tube, from, to);
+    }
+
+    @Override
+    public void dispatch(int time, int robot, int floor, boolean tube, MailItem mailItem) {
+        if (full) record(DISPATCH, time, robot, tubeFlag(tube), mailItem, null);
+        for (IEventListener listener : listeners) listener.dispatch(time, robot, floor, tube, mailItem);
+    }
+
+    @Override
+    public void delivery(int time, int count, MailItem mailItem) {
+        if (full) record(DELIVERY, time, count, 0, mailItem, null);
+        for (IEventListener listener : listeners) listener.delivery(time, count, mailItem);
+    }
+
+    /**
+     * Writes a line of the run summary, formatted as by printf on the writer thread
+     * @param format the printf format, including any line ending
+     */
+    public void summary(String format, Object... args) {
+        if (summary) record(TEXT, 0, 0, 0, format, args);
+    }
+
+    /**
+     * Writes out everything recorded so far and stops the writer thread.
+     * Nothing more may be recorded afterwards.
+     */
+    public void close() {
+        if (writer == null) return;
+        try {
+            if (current.size > 0) written.put(current);
+            written.put(last);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        current = null;
+        if (failure != null) failure.printStackTrace();
+    }
+
+    private static int tubeFlag(boolean tube) {
+        return tube ? 1 : 0;
+    }
+
+    private void record(byte type, int time, int a, int b, Object ref, Object[] args) {
+        Batch batch = current;
+        int i = batch.size++;
+        batch.type[i] = type;
+        batch.time[i] = time;
+        batch.a[i] = a;
+        batch.b[i] = b;
+        batch.ref[i] = ref;
+        batch.args[i] = args;
+        if (batch.size == BATCH_SIZE) {
+            try {
+                written.put(batch);
+                current = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while logging", e);
+            }
+        }
+    }
+
+    private void drain(Writer out) {
+        StringBuilder text = new StringBuilder(BATCH_SIZE * 96);
+        try {
+            while (true) {
+                Batch batch = written.take();
+                if (batch == last) break;
+                format(batch, text);
+                batch.size = 0;
+                Arrays.fill(batch.ref, null);
+                Arrays.fill(batch.args, null);
+                free.put(batch);
+                write(out, text);
+            }
+            if (failure == null) out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void write(Writer out, StringBuilder text) {
+        if (failure == null) {
+            try {
+                out.append(text);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        text.setLength(0);
+    }
+
+    private static void format(Batch batch, StringBuilder text) {
+        for (int i = 0; i < batch.size; i++) {
+            if (batch.type[i] == TEXT) {
+                text.append(String.format((String) batch.ref[i], batch.args[i]));
+                continue;
+            }
+            text.append("T: ");
+            pad(text, String.valueOf(batch.time[i]), 3);
+            text.append(" > ");
+            switch (batch.type[i]) {
+                case ARRIVAL:
+                    text.append("+ addToPool [");
+                    break;
+                case REPOOL:
+                    text.append(" +addToPool [");
+                    break;
+                case STATE_CHANGE:
+                    robot(text, batch.a[i], batch.b[i] & 1, 7);
+                    text.append(" changed from ").append(STATES[batch.b[i] >> 8 & 0xff])
+                        .append(" to ").append(STATES[batch.b[i] >> 16 & 0xff]).append(NEWLINE);
+                    continue;
+                case DISPATCH:
+                    robot(text, batch.a[i], batch.b[i] & 1, 9);
+                    text.append("-> [");
+                    break;
+                case DELIVERY:
+                    text.append("Deliv(");
+                    pad(text, String.valueOf(batch.a[i]), 4);
+                    text.append(") [");
+                    break;
+            }
+            ((MailItem) batch.ref[i]).appendTo(text);
+            text.append(']').append(NEWLINE);
+        }
+    }
+
+    /** Robot with its tube occupancy, as R3(1) */
+    private static void robot(StringBuilder text, int id, int tube, int width) {
+        String name = "R" + id + "(" + tube + ")";
+        pad(text, name, width);
+    }
+
+    /** Right aligns a value in a field, as printf's %Ns does */
+    static void pad(StringBuilder text, String value, int width) {
+        for (int i = value.length(); i < width; i++) text.append(' ');
+        text.append(value);
+    }
+}
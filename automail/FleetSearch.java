@@ -0,0 +1,334 @@
+package automail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import exceptions.SimulationStalledException;
+
+/**
+ * Finds the fewest robots that keep a run within a target, the 95th percentile latency
+ * or the total score, for every seed in a range.
+ * <p>
+ * Fewer robots never make a run faster, so the search bisects the robot count between
+ * none and maxRobots. A candidate fails as soon as one seed misses the target, and that
+ * run is itself stopped once it can no longer make it: the score only grows, and the 95th
+ * percentile is above the target once more than a twentieth of the mail has been
+ * delivered later than it.
+ * <p>
+ * Every run is kept in a cache file, Search_Cache in automail.properties and
+ * fleet-search.cache by default, keyed by a hash of the settings that decide the run's
+ * results and its seed. A completed run answers any later target, a stopped one any
+ * target no higher than the one it was stopped at. A run the watchdog stopped is not kept,
+ * as its tick and time budgets are not in the key. Each scenario is a properties file
+ * read over automail.properties, as to search with and without Caution or for several
+ * Floors, with no scenario files automail.properties is the only scenario.
+ * Usage: FleetSearch p95|score target maxRobots firstSeed lastSeed [scenario.properties ...]
+ */
+public class FleetSearch {
+
+    /** What a run is measured by */
+    public enum Objective { P95, SCORE }
+
+    /** The reason a run was stopped once it could no longer meet the target */
+    public static class TargetMissed extends Exception {
+        TargetMissed(String message) {
+            super(message);
+        }
+    }
+
+    /** Stops a run as soon as it is bound to miss the target */
+    private static final class EarlyStop implements IScoreObjective {
+        private final SimulationContext context;
+        private final Objective objective;
+        private final double target;
+        /** How many deliveries may be later than the target with the 95th percentile still within it */
+        private long allowedLate = -1;
+        private long late;
+
+        EarlyStop(SimulationContext context, Objective objective, double target) {
+            this.context = context;
+            this.objective = objective;
+            this.target = target;
+        }
+
+        @Override
+        public String getName() {
+            return "Deliveries later than the target";
+        }
+
+        @Override
+        public void record(int latency, MailItem mailItem) {
+            if (objective == Objective.SCORE) {
+                if (context.getTotalScore() > target) {
+                    context.stop(new TargetMissed("score already above " + target));
+                }
+                return;
+            }
+            if (latency <= target) return;
+            if (allowedLate < 0) {
+                long total = context.getMailToCreate();
+                allowedLate = total - (long) Math.ceil(0.95 * total);
+            }
+            if (++late > allowedLate) {
+                context.stop(new TargetMissed("p95 latency already above " + target));
+            }
+        }
+
+        @Override
+        public double getValue() {
+            return late;
+        }
+    }
+
+    /** What is known about one run, from the cache or from running it */
+    private static final class Entry {
+        /** The measures of a completed run, NaN if it has not completed */
+        double p95 = Double.NaN;
+        double score = Double.NaN;
+        /** The highest targets the run was stopped for missing */
+        double p95Above = Double.NEGATIVE_INFINITY;
+        double scoreAbove = Double.NEGATIVE_INFINITY;
+        /** Why the run failed, or null */
+        String failure;
+    }
+
+    private final Objective objective;
+    private final double target;
+    private final File cacheFile;
+    private final Map<String, Entry> cache = new HashMap<String, Entry>();
+    private int runs;
+    private int cached;
+    private int stopped;
+
+    /**
+     * @param cacheFile where runs are remembered, read now if it exists
+     */
+    public FleetSearch(Objective objective, double target, File cacheFile) throws IOException {
+        this.objective = objective;
+        this.target = target;
+        this.cacheFile = cacheFile;
+        if (cacheFile.exists()) load();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.out.println("Usage: FleetSearch p95|score target maxRobots firstSeed lastSeed [scenario.properties ...]");
+            return;
+        }
+        Objective objective = Objective.valueOf(args[0].trim().toUpperCase());
+        double target = Double.parseDouble(args[1]);
+        int maxRobots = Integer.parseInt(args[2]);
+        int firstSeed = Integer.parseInt(args[3]);
+        int lastSeed = Integer.parseInt(args[4]);
+        Properties automailProperties = SimulationConfig.loadProperties("automail.properties");
+        FleetSearch search = new FleetSearch(objective, target,
+                new File(automailProperties.getProperty("Search_Cache", "fleet-search.cache").trim()));
+
+        List<String> scenarios = new ArrayList<String>();
+        for (int i = 5; i < args.length; i++) scenarios.add(args[i]);
+        if (scenarios.isEmpty()) scenarios.add(null);
+        for (String scenario : scenarios) {
+            Properties settings = new Properties();
+            settings.putAll(automailProperties);
+            if (scenario != null) {
+                FileReader inStream = new FileReader(scenario);
+                try {
+                    settings.load(inStream);
+                } finally {
+                    inStream.close();
+                }
+            }
+            System.out.printf("%s, %s within %s over seeds %d to %d%n", scenario == null ? "automail.properties" : scenario,
+                    objective.name().toLowerCase(), args[1], firstSeed, lastSeed);
+            SimulationConfig config = SimulationConfig.fromProperties(settings);
+            int robots = search.fewestRobots(config, maxRobots, firstSeed, lastSeed);
+            if (robots < 0) {
+                System.out.printf("Not met with %d robots%n", maxRobots);
+            } else {
+                System.out.printf("Fewest robots: %d%n", robots);
+            }
+        }
+        System.out.printf("%d runs, %d from the cache, %d stopped early%n", search.runs, search.cached, search.stopped);
+    }
+
+    /**
+     * Bisects the robot count, assuming fewer robots never do better
+     * @param config the settings to search, its robots and seed are ignored
+     * @return the fewest robots that meet the target for every seed, or -1 if maxRobots do not
+     */
+    public int fewestRobots(SimulationConfig config, int maxRobots, int firstSeed, int lastSeed) throws IOException {
+        if (!meets(config, maxRobots, firstSeed, lastSeed)) return -1;
+        int failing = 0;
+        int passing = maxRobots;
+        while (passing - failing > 1) {
+            int robots = (failing + passing) >>> 1;
+            if (meets(config, robots, firstSeed, lastSeed)) {
+                passing = robots;
+            } else {
+                failing = robots;
+            }
+        }
+        return passing;
+    }
+
+    /**
+     * @return whether the fleet meets the target for every seed, stopping at the first that does not
+     */
+    public boolean meets(SimulationConfig config, int robots, int firstSeed, int lastSeed) throws IOException {
+        double worst = Double.NEGATIVE_INFINITY;
+        for (int seed = firstSeed; seed <= lastSeed; seed++) {
+            SimulationConfig runConfig = config.copy().headless();
+            runConfig.robots = robots;
+            runConfig.seed = seed;
+            Entry entry = find(runConfig);
+            if (entry.failure != null) {
+                System.out.printf("Robots %6d: seed %d failed: %s%n", robots, seed, entry.failure);
+                return false;
+            }
+            double value = objective == Objective.P95 ? entry.p95 : entry.score;
+            if (Double.isNaN(value) || value > target) {
+                System.out.printf("Robots %6d: seed %d %s%n", robots, seed,
+                        Double.isNaN(value) ? "stopped early" : String.format("%s %.2f", name(), value));
+                return false;
+            }
+            worst = Math.max(worst, value);
+        }
+        System.out.printf("Robots %6d: worst %s %.2f%n", robots, name(), worst);
+        return true;
+    }
+
+    private String name() {
+        return objective == Objective.P95 ? "p95 latency" : "score";
+    }
+
+    /**
+     * @return what the cache knows of the run if it settles the target, otherwise the run's own result
+     */
+    private Entry find(SimulationConfig config) throws IOException {
+        String key = key(config);
+        Entry entry = cache.get(key);
+        if (entry != null && settles(entry)) {
+            cached++;
+            return entry;
+        }
+        runs++;
+        SimulationContext context = new SimulationContext(config);
+        context.getScores().add(new EarlyStop(context, objective, target));
+        Simulation.run(context);
+        Throwable failure = context.getFailure();
+        if (failure instanceof SimulationStalledException) {
+            Entry stalled = new Entry();
+            stalled.failure = String.valueOf(failure);
+            return stalled;
+        }
+        String line;
+        if (entry == null) {
+            entry = new Entry();
+            cache.put(key, entry);
+        }
+        if (failure instanceof TargetMissed) {
+            stopped++;
+            line = key + "\tabove\t" + objective + "\t" + target;
+        } else if (failure != null || !context.isComplete()) {
+            line = key + "\tfailed\t" + String.valueOf(failure).replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        } else {
+            line = key + "\tdone\t" + context.getScores().getLatency().percentile(95) + "\t" + context.getTotalScore();
+        }
+        apply(entry, line.split("\t"));
+        Writer out = new FileWriter(cacheFile, true);
+        try {
+            out.write(line);
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+        return entry;
+    }
+
+    private boolean settles(Entry entry) {
+        if (entry.failure != null) return true;
+        if (objective == Objective.P95) return !Double.isNaN(entry.p95) || entry.p95Above >= target;
+        return !Double.isNaN(entry.score) || entry.scoreAbove >= target;
+    }
+
+    private void load() throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(cacheFile));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                /** A line cut short by a crash is left out */
+                if (fields.length < 3 || (fields[1].equals("done") || fields[1].equals("above")) && fields.length < 4) {
+                    continue;
+                }
+                Entry entry = cache.get(fields[0]);
+                if (entry == null) {
+                    entry = new Entry();
+                    cache.put(fields[0], entry);
+                }
+                try {
+                    apply(entry, fields);
+                } catch (IllegalArgumentException e) {
+                    // Not a line this version wrote, leave it out
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void apply(Entry entry, String[] fields) {
+        if (fields[1].equals("done")) {
+            entry.p95 = Double.parseDouble(fields[2]);
+            entry.score = Double.parseDouble(fields[3]);
+        } else if (fields[1].equals("above")) {
+            double above = Double.parseDouble(fields[3]);
+            if (Objective.valueOf(fields[2]) == Objective.P95) {
+                entry.p95Above = Math.max(entry.p95Above, above);
+            } else {
+                entry.scoreAbove = Math.max(entry.scoreAbove, above);
+            }
+        } else if (fields[1].equals("failed")) {
+            entry.failure = fields[2];
+        }
+    }
+
+    /**
+     * @return a hash of every setting that changes a run's results, and its seed
+     */
+    static String key(SimulationConfig config) {
+        String settings = "Floors=" + config.floors
+                + "\nMail_to_Create=" + config.mailToCreate
+                + "\nMail_Max_Weight=" + config.mailMaxWeight
+                + "\nLast_Delivery_Time=" + config.lastDeliveryTime
+                + "\nRobots=" + config.robots
+                + "\nMailPool=" + config.mailPool.trim()
+                + "\nCaution=" + config.cautionEnabled
+                + "\nFragile=" + config.fragileEnabled
+                + "\nRouting=" + (config.sweepRoutes ? "sweep" : "loaded")
+                + "\nMail_Generation=" + (config.streamingMail ? "streaming" : "eager")
+                + "\nMail_Store=" + (config.columnarMail ? "columnar" : "objects")
+                + "\nWorkload_File=" + config.workloadFile
+                + "\nSeed=" + config.seed + "\n";
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(settings.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+}
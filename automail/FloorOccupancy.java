@@ -0,0 +1,55 @@
+package automail;
+
+/**
+ * Counts, per floor, the caution robots that are unwrapping a fragile item or are parked
+ * at its destination. Robots nearby have to hold still while any of these are next to them.
+ * Robots keep their own entry up to date, so asking about a floor is a single array read.
+ */
+public class FloorOccupancy {
+
+    private int[] unwrapping;
+    private int total;
+
+    /**
+     * @param floors the number of floors in the building
+     */
+    public FloorOccupancy(int floors) {
+        unwrapping = new int[floors + 2];
+    }
+
+    /**
+     * @return whether a robot is unwrapping on the floor directly above or below
+     */
+    public boolean unwrappingNextTo(int floor) {
+        return count(floor + 1) > 0 || count(floor - 1) > 0;
+    }
+
+    /**
+     * @return whether no robot is unwrapping anywhere
+     */
+    public boolean isEmpty() {
+        return total == 0;
+    }
+
+    /**
+     * @return the number of robots unwrapping on this floor
+     */
+    public int count(int floor) {
+        return floor >= 0 && floor < unwrapping.length ? unwrapping[floor] : 0;
+    }
+
+    void enter(int floor) {
+        if (floor >= unwrapping.length) {
+            int[] grown = new int[Math.max(floor + 2, unwrapping.length * 2)];
+            System.arraycopy(unwrapping, 0, grown, 0, unwrapping.length);
+            unwrapping = grown;
+        }
+        unwrapping[floor]++;
+        total++;
+    }
+
+    void leave(int floor) {
+        unwrapping[floor]--;
+        total--;
+    }
+}
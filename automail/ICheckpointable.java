@@ -0,0 +1,20 @@
+package automail;
+
+import java.io.IOException;
+
+/**
+ * Part of a simulation that can be written to a snapshot and read back into a fresh
+ * simulation with the same configuration, which then carries on exactly as it would have
+ */
+public interface ICheckpointable {
+
+    /**
+     * Writes everything the run still depends on
+     */
+    void save(SnapshotOutput out) throws IOException;
+
+    /**
+     * Reads back what save wrote, replacing the state this was created with
+     */
+    void restore(SnapshotInput in) throws IOException;
+}
@@ -0,0 +1,14 @@
+package automail;
+
+/**
+ * Told about each event of a run as it happens: the robots' own events, and the arrivals
+ * and deliveries reported by the simulation.
+ */
+public interface IEventListener extends IRobotEvents {
+
+    /** Mail arrived at the building and was put in the pool */
+    void arrival(int time, MailItem mailItem);
+
+    /** An item was delivered, count is the number delivered so far */
+    void delivery(int time, int count, MailItem mailItem);
+}
@@ -0,0 +1,23 @@
+package automail;
+
+/**
+ * Supplies the mail for a run, putting each item into the pool at its arrival time
+ */
+public interface IMailSource {
+
+    /**
+     * @return how many items arrive over the whole run
+     */
+    int totalMail();
+
+    /**
+     * Puts any mail arriving at the current time into the pool
+     */
+    void step();
+
+    /**
+     * @param now the current time
+     * @return the first time at or after now when mail arrives, Integer.MAX_VALUE if no more will
+     */
+    int nextArrivalTime(int now);
+}
@@ -0,0 +1,27 @@
+package automail;
+
+/**
+ * The events a robot reports as it steps. Robots are described by value, as they were at
+ * the time, so events can be buffered and passed on later.
+ */
+public interface IRobotEvents {
+
+    /** A robot came back with an undelivered item and put it back in the pool */
+    void repool(int time, MailItem mailItem);
+
+    /**
+     * A robot moved from one state to another
+     * @param robot the robot's index
+     * @param floor the floor the robot is on
+     * @param tube whether the robot has an item in its tube
+     */
+    void stateChange(int time, int robot, int floor, boolean tube, Robot.RobotState from, Robot.RobotState to);
+
+    /**
+     * A robot set off towards the item it is about to deliver
+     * @param robot the robot's index
+     * @param floor the floor the robot is on
+     * @param tube whether the robot has an item in its tube
+     */
+    void dispatch(int time, int robot, int floor, boolean tube, MailItem mailItem);
+}
@@ -0,0 +1,20 @@
+package automail;
+
+/**
+ * One measure of how well a run went, worked out a delivery at a time
+ */
+public interface IScoreObjective {
+
+    String getName();
+
+    /**
+     * @param latency the time from the item's arrival to its delivery
+     * @param mailItem the item delivered
+     */
+    void record(int latency, MailItem mailItem);
+
+    /**
+     * @return the measure over every delivery recorded so far
+     */
+    double getValue();
+}
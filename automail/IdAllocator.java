@@ -0,0 +1,34 @@
+package automail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out dense sequential ids, starting at 0.
+ * Each simulation has its own allocators so ids restart with every run,
+ * and ids can be taken from any thread without locking.
+ */
+public class IdAllocator {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @return an id that has not been handed out before
+     */
+    public int next() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * @return how many ids have been handed out
+     */
+    public int allocated() {
+        return next.get();
+    }
+
+    /**
+     * Carries on from a restored snapshot, the next id handed out is allocated
+     */
+    void restore(int allocated) {
+        next.set(allocated);
+    }
+}
@@ -0,0 +1,117 @@
+package automail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts latencies in a fixed number of buckets so percentiles can be read off in bounded
+ * memory however many deliveries there are. Latencies below 256 get a bucket each, above
+ * that each power of two is split into 128 buckets, so a percentile is at most 0.8% high.
+ */
+public class LatencyHistogram implements ICheckpointable {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int EXACT = SUB_BUCKETS << 1;
+    private static final int BUCKETS = EXACT + (31 - (SUB_BITS + 1)) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private int max;
+
+    /**
+     * @param latency the time from arrival to delivery, treated as 0 if negative
+     */
+    public void record(int latency) {
+        latency = Math.max(latency, 0);
+        counts[bucket(latency)]++;
+        count++;
+        sum += latency;
+        if (latency > max) max = latency;
+    }
+
+    private static int bucket(int value) {
+        if (value < EXACT) return value;
+        int exponent = 31 - Integer.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return EXACT + (exponent - SUB_BITS - 1) * SUB_BUCKETS + (value >> shift) - SUB_BUCKETS;
+    }
+
+    /** The largest latency that falls in a bucket */
+    private static int highest(int bucket) {
+        if (bucket < EXACT) return bucket;
+        int exponent = (bucket - EXACT) / SUB_BUCKETS + SUB_BITS + 1;
+        int shift = exponent - SUB_BITS;
+        long lowest = (long) ((bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return (int) Math.min(lowest + (1L << shift) - 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds in every latency recorded by another histogram, as if recorded here
+     */
+    public void add(LatencyHistogram other) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        count += other.count;
+        sum += other.sum;
+        if (other.max > max) max = other.max;
+    }
+
+    /**
+     * Only the buckets that have been used are written
+     */
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeInt(max);
+        int used = 0;
+        for (long n : counts) if (n != 0) used++;
+        out.writeInt(used);
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (counts[bucket] == 0) continue;
+            out.writeShort(bucket);
+            out.writeLong(counts[bucket]);
+        }
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        count = in.readLong();
+        sum = in.readLong();
+        max = in.readInt();
+        Arrays.fill(counts, 0);
+        for (int used = in.readInt(); used > 0; used--) {
+            counts[in.readUnsignedShort()] = in.readLong();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @param p the percentile, from 0 to 100
+     * @return the nearest rank percentile, or 0 if nothing has been recorded
+     */
+    public int percentile(double p) {
+        if (count == 0) return 0;
+        long rank = Math.max((long) Math.ceil(p / 100 * count), 1);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) return Math.min(highest(bucket), max);
+        }
+        return max;
+    }
+}
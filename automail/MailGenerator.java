@@ -1,5 +1,6 @@
 package automail;
 
+import java.io.IOException;
 import java.util.*;
 
 import strategies.IMailPool;
@@ -7,42 +8,68 @@ import strategies.IMailPool;
 /**
  * This class generates the mail
  */
-public class MailGenerator {
+public class MailGenerator implements IMailSource, ICheckpointable {
 
     public final int MAIL_TO_CREATE;
     public final int MAIL_MAX_WEIGHT;
     
     private int mailCreated;
 
-    private final Random random;
+    protected Random random;
     /** This seed is used to make the behaviour deterministic */
     
     private boolean complete;
-    private IMailPool mailPool;
+    protected IMailPool mailPool;
+    protected final SimulationContext context;
 
-    private Map<Integer,ArrayList<MailItem>> allMail;
+    /** The mail arriving at each time, null for times when none does */
+    private ArrayList<MailItem>[] allMail;
+    /** No mail arrives before this time, only ever moves forward */
+    private int nextArrival;
 
     /**
-     * Constructor for mail generation
-     * @param mailToCreate roughly how many mail items to create
+     * Constructor for mail generation, how much mail to create, its maximum weight and the
+     * random seed come from the context's configuration
+     * @param context the simulation the mail is generated for
      * @param mailPool where mail items go on arrival
-     * @param seed random seed for generating mail
      */
-    public MailGenerator(int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed){
-        if(seed.containsKey(true)){
-        	this.random = new Random((long) seed.get(true));
+    public MailGenerator(SimulationContext context, IMailPool mailPool){
+        Integer seed = context.config.seed;
+        if(seed != null){
+        	this.random = new Random((long) seed);
         }
         else{
         	this.random = new Random();	
         }
+        int mailToCreate = context.config.mailToCreate;
         // Vary arriving mail by +/-20%
         MAIL_TO_CREATE = mailToCreate*4/5 + random.nextInt(mailToCreate*2/5);
-        MAIL_MAX_WEIGHT = mailMaxWeight;
+        MAIL_MAX_WEIGHT = context.config.mailMaxWeight;
         // System.out.println("Num Mail Items: "+MAIL_TO_CREATE);
         mailCreated = 0;
         complete = false;
-        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        allMail = newArrivals(context.clock.LAST_DELIVERY_TIME + 1);
+        nextArrival = 0;
         this.mailPool = mailPool;
+        this.context = context;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<MailItem>[] newArrivals(int times) {
+        return (ArrayList<MailItem>[]) new ArrayList<?>[times];
+    }
+
+    /**
+     * @return the list of mail arriving at a time, made if need be
+     */
+    private ArrayList<MailItem> arrivals(int time) {
+        if (time >= allMail.length) {
+            allMail = Arrays.copyOf(allMail, time + 1);
+        }
+        if (allMail[time] == null) {
+            allMail[time] = new ArrayList<MailItem>();
+        }
+        return allMail[time];
     }
 
     /**
@@ -53,10 +80,10 @@ public class MailGenerator {
         int arrival_time = generateArrivalTime();
         int weight = generateWeight();
         boolean isFragile = generateFragile && generateFragile();
-        return new MailItem(dest_floor, arrival_time, weight, isFragile);
+        return new MailItem(context.mailIds.next(), dest_floor, arrival_time, weight, isFragile);
     }
     
-    private boolean generateFragile() {
+    protected boolean generateFragile() {
     	final int chance = 4;  // 1 in chance of being fragile
     	return random.nextInt(chance)+1 >= chance;
     	// return random.nextBoolean();
@@ -65,14 +92,14 @@ public class MailGenerator {
     /**
      * @return a destination floor between the ranges of GROUND_FLOOR to FLOOR
      */
-    private int generateDestinationFloor(){
-        return Building.LOWEST_FLOOR + random.nextInt(Building.FLOORS);
+    protected int generateDestinationFloor(){
+        return Building.LOWEST_FLOOR + random.nextInt(context.building.FLOORS);
     }
 
     /**
      * @return a random weight
      */
-    private int generateWeight(){
+    protected int generateWeight(){
     	final double mean = 200.0; // grams for normal item
     	final double stddev = 1000.0; // grams
     	double base = random.nextGaussian();
@@ -84,8 +111,8 @@ public class MailGenerator {
     /**
      * @return a random arrival time before the last delivery time
      */
-    private int generateArrivalTime(){
-        return 1 + random.nextInt(Clock.LAST_DELIVERY_TIME);
+    protected int generateArrivalTime(){
+        return 1 + random.nextInt(context.clock.LAST_DELIVERY_TIME);
     }
 
     /**
@@ -95,19 +122,8 @@ public class MailGenerator {
         while(!complete){
             MailItem newMail =  generateMail(generateFragile);
             int timeToDeliver = newMail.getArrivalTime();
-            /** Check if key exists for this time **/
-            if(allMail.containsKey(timeToDeliver)){
-                /** Add to existing array */
-                allMail.get(timeToDeliver).add(newMail);
-            }
-            else{
-                /** If the key doesn't exist then set a new key along with the array of MailItems to add during
-                 * that time step.
-                 */
-                ArrayList<MailItem> newMailList = new ArrayList<MailItem>();
-                newMailList.add(newMail);
-                allMail.put(timeToDeliver,newMailList);
-            }
+            /** Add to the array of MailItems to add during that time step, indexed by time so stepping does not box it */
+            arrivals(timeToDeliver).add(newMail);
             /** Mark the mail as created */
             mailCreated++;
 
@@ -119,14 +135,77 @@ public class MailGenerator {
 
     }
     
+    @Override
+    public int totalMail() {
+        return MAIL_TO_CREATE;
+    }
+
+    @Override
+    public int nextArrivalTime(int now) {
+        if (nextArrival < now) nextArrival = now;
+        int last = context.clock.LAST_DELIVERY_TIME;
+        while (nextArrival <= last && (nextArrival >= allMail.length || allMail[nextArrival] == null)) {
+            nextArrival++;
+        }
+        return nextArrival <= last ? nextArrival : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Writes the random source and the mail still to arrive, from the current time on
+     */
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        out.writeInt(MAIL_TO_CREATE);
+        out.writeRandom(random);
+        out.writeInt(nextArrival);
+        int now = Math.max(context.clock.Time(), 0);
+        int times = 0;
+        for (int time = now; time < allMail.length; time++) {
+            if (allMail[time] != null) times++;
+        }
+        out.writeInt(times);
+        for (int time = now; time < allMail.length; time++) {
+            List<MailItem> arriving = allMail[time];
+            if (arriving == null) continue;
+            out.writeInt(time);
+            out.writeInt(arriving.size());
+            for (MailItem mailItem : arriving) out.writeMail(mailItem);
+        }
+    }
+
+    /**
+     * Replaces generateAllMail when a run is resumed
+     */
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        if (in.readInt() != MAIL_TO_CREATE) {
+            throw new IOException("Snapshot was taken with different mail");
+        }
+        random = in.readRandom();
+        nextArrival = in.readInt();
+        allMail = newArrivals(context.clock.LAST_DELIVERY_TIME + 1);
+        for (int times = in.readInt(); times > 0; times--) {
+            int time = in.readInt();
+            int n = in.readInt();
+            ArrayList<MailItem> arriving = arrivals(time);
+            for (int i = 0; i < n; i++) arriving.add(in.readMail());
+        }
+        mailCreated = MAIL_TO_CREATE;
+        complete = true;
+    }
+
     /**
      * While there are steps left, create a new mail item to deliver
      */
+    @Override
     public void step(){
     	// Check if there are any mail to create
-        if(this.allMail.containsKey(Clock.Time())){
-            for(MailItem mailItem : allMail.get(Clock.Time())){
-                System.out.printf("T: %3d > + addToPool [%s]%n", Clock.Time(), mailItem.toString());
+        int now = context.clock.Time();
+        ArrayList<MailItem> arriving = now >= 0 && now < allMail.length ? allMail[now] : null;
+        if(arriving != null){
+            for(int i = 0; i < arriving.size(); i++){
+                MailItem mailItem = arriving.get(i);
+                context.log.arrival(now, mailItem);
                 mailPool.addToPool(mailItem);
             }
         }
@@ -1,8 +1,5 @@
 package automail;
 
-import java.util.Map;
-import java.util.TreeMap;
-
 // import java.util.UUID;
 
 /**
@@ -12,8 +9,10 @@ public class MailItem {
 	
     /** Represents the destination floor to which the mail is intended to go */
     protected final int destination_floor;
-    /** The mail identifier */
-    protected final String id;
+    /** The dense mail index, unique within a simulation */
+    protected final int index;
+    /** The mail identifier, built from the index when first asked for */
+    private String id;
     /** The time the mail item arrived */
     protected final int arrival_time;
     /** The weight in grams of the mail item */
@@ -23,13 +22,14 @@ public class MailItem {
 
     /**
      * Constructor for a MailItem
+     * @param index the id this item was given by the simulation's mail IdAllocator
      * @param dest_floor the destination floor intended for this mail item
      * @param arrival_time the time that the mail arrived
      * @param weight the weight of this mail item
      */
-    public MailItem(int dest_floor, int arrival_time, int weight, boolean isFragile){
+    public MailItem(int index, int dest_floor, int arrival_time, int weight, boolean isFragile){
+        this.index = index;
         this.destination_floor = dest_floor;
-        this.id = String.valueOf(hashCode());
         this.arrival_time = arrival_time;
         this.weight = weight;
         this.fragile = isFragile;
@@ -37,7 +37,26 @@ public class MailItem {
 
     @Override
     public String toString(){
-        return String.format("Mail Item:: ID: %6s | Arrival: %4d | Destination: %2d | Weight: %4d | %7s", id, arrival_time, destination_floor, weight, (fragile ? "fragile" : "normal"));
+        StringBuilder text = new StringBuilder(80);
+        appendTo(text);
+        return text.toString();
+    }
+
+    /**
+     * Writes the same text as toString without going through String.format
+     * @param text where the description is appended
+     */
+    void appendTo(StringBuilder text) {
+        text.append("Mail Item:: ID: ");
+        EventLog.pad(text, getId(), 6);
+        text.append(" | Arrival: ");
+        EventLog.pad(text, String.valueOf(arrival_time), 4);
+        text.append(" | Destination: ");
+        EventLog.pad(text, String.valueOf(destination_floor), 2);
+        text.append(" | Weight: ");
+        EventLog.pad(text, String.valueOf(weight), 4);
+        text.append(" | ");
+        EventLog.pad(text, fragile ? "fragile" : "normal", 7);
     }
 
     /**
@@ -53,9 +72,18 @@ public class MailItem {
      * @return the ID of the mail item
      */
     public String getId() {
+        if (id == null) id = String.valueOf(index);
         return id;
     }
 
+    /**
+     *
+     * @return the dense index of the mail item
+     */
+    public int getIndex() {
+        return index;
+    }
+
     /**
      *
      * @return the arrival time of the mail item
@@ -75,14 +103,13 @@ public class MailItem {
 
    public boolean getFragile() {return fragile;}
    
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
-
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return index;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof MailItem && ((MailItem) other).index == index;
 	}
 }
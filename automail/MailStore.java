@@ -0,0 +1,118 @@
+package automail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Keeps mail as columns of primitives indexed by the mail's dense index, its handle,
+ * instead of one object per item. A MailItem is only made, as a view, when an item
+ * leaves the pool or has to be written to the log.
+ */
+public class MailStore implements ICheckpointable {
+
+    private final IdAllocator mailIds;
+    private int[] destination;
+    private int[] arrival;
+    private int[] weight;
+    private BitSet fragile;
+    private int size;
+
+    /**
+     * @param mailIds numbers the mail, the store's handles are these numbers
+     * @param capacity how many items to make room for up front
+     */
+    public MailStore(IdAllocator mailIds, int capacity) {
+        this.mailIds = mailIds;
+        capacity = Math.max(capacity, 16);
+        destination = new int[capacity];
+        arrival = new int[capacity];
+        weight = new int[capacity];
+        fragile = new BitSet(capacity);
+        size = 0;
+    }
+
+    /**
+     * Adds an item, numbering it from the simulation's mail IdAllocator
+     * @return the handle of the new item
+     */
+    public int add(int dest_floor, int arrival_time, int weight, boolean isFragile) {
+        int handle = mailIds.next();
+        assert(handle == size);
+        if (handle >= destination.length) {
+            int capacity = Math.max(handle + 1, destination.length * 2);
+            destination = Arrays.copyOf(destination, capacity);
+            arrival = Arrays.copyOf(arrival, capacity);
+            this.weight = Arrays.copyOf(this.weight, capacity);
+        }
+        destination[handle] = dest_floor;
+        arrival[handle] = arrival_time;
+        this.weight[handle] = weight;
+        if (isFragile) fragile.set(handle);
+        size++;
+        return handle;
+    }
+
+    public int getDestFloor(int handle) {
+        return destination[handle];
+    }
+
+    public int getArrivalTime(int handle) {
+        return arrival[handle];
+    }
+
+    public int getWeight(int handle) {
+        return weight[handle];
+    }
+
+    public boolean getFragile(int handle) {
+        return fragile.get(handle);
+    }
+
+    /**
+     * @return a MailItem for the handle, equal to any other view of the same item
+     */
+    public MailItem view(int handle) {
+        return new MailItem(handle, destination[handle], arrival[handle], weight[handle], fragile.get(handle));
+    }
+
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        out.writeInt(size);
+        for (int handle = 0; handle < size; handle++) {
+            out.writeInt(destination[handle]);
+            out.writeInt(arrival[handle]);
+            out.writeInt(weight[handle]);
+        }
+        long[] words = fragile.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) out.writeLong(word);
+    }
+
+    /**
+     * Handles are kept, the mail IdAllocator is restored with the rest of the simulation
+     */
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        size = in.readInt();
+        int capacity = Math.max(size, destination.length);
+        destination = new int[capacity];
+        arrival = new int[capacity];
+        weight = new int[capacity];
+        for (int handle = 0; handle < size; handle++) {
+            destination[handle] = in.readInt();
+            arrival[handle] = in.readInt();
+            weight[handle] = in.readInt();
+        }
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+        fragile = BitSet.valueOf(words);
+    }
+
+    /**
+     * @return the number of items in the store
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -5,8 +5,8 @@ import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
 
 public class NormalRobot extends Robot{
-    public NormalRobot(IMailDelivery delivery, IMailPool mailPool) {
-        super(delivery, mailPool);
+    public NormalRobot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context) {
+        super(delivery, mailPool, context);
     }
 
     /**
@@ -21,7 +21,7 @@ public class NormalRobot extends Robot{
                 if(current_floor == Building.MAILROOM_LOCATION){
                     if (tube != null) {
                         mailPool.addToPool(tube);
-                        System.out.printf("T: %3d >  +addToPool [%s]%n", Clock.Time(), tube.toString());
+                        events.repool(context.clock.Time(), tube);
                         tube = null;
                     }
                     /** Tell the sorter the robot is ready */
@@ -37,6 +37,7 @@ public class NormalRobot extends Robot{
                 if(!isEmpty() && receivedDispatch){
                     receivedDispatch = false;
                     deliveryCounter = 0; // reset delivery counter
+                    planRoute();
                     setRoute();
                     changeState(RobotState.DELIVERING);
                 }
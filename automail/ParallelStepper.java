@@ -0,0 +1,193 @@
+package automail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import exceptions.ExcessiveDeliveryException;
+
+/**
+ * Steps the fleet on several threads with the same results as stepping it in index order.
+ * <p>
+ * Each robot's calls to the pool, the delivery and the log go to its own RobotOutbox,
+ * and the outboxes are replayed in robot order once every robot has stepped. The only
+ * state robots share directly is the caution robots' FloorOccupancy. A robot that may
+ * change it, or that reads it within reach of an earlier robot that may, is coupled and
+ * steps on the simulation thread in robot order after the rest. Every other robot sees
+ * the occupancy as it was at the start of the tick, which is what it would have seen
+ * stepping in turn, so those step in parallel.
+ */
+class ParallelStepper {
+
+    /** Below this many independent robots a tick is stepped inline, handing off costs more */
+    private static final int MIN_PARALLEL = 512;
+
+    private final Robot[] robots;
+    private final RobotOutbox[] outboxes;
+    private final Throwable[] failures;
+    private final int threads;
+    private final ExecutorService workers;
+    private final List<Callable<Void>> chunks;
+
+    /** The robots of this tick that can step in parallel, and those that have to step in turn */
+    private final int[] independent;
+    private int independentCount;
+    private final int[] coupled;
+    private int coupledCount;
+    /** The tick each floor was last marked as within reach of an occupancy change */
+    private int[] writerStamp;
+    private int tick;
+
+    /**
+     * Redirects the fleet's calls into outboxes, robots must only be stepped through this afterwards
+     * @param threads how many threads step robots, including the simulation thread
+     */
+    ParallelStepper(Robot[] robots, int floors, int threads) {
+        this.robots = robots;
+        this.threads = threads;
+        this.outboxes = new RobotOutbox[robots.length];
+        this.failures = new Throwable[robots.length];
+        for (int i = 0; i < robots.length; i++) {
+            Robot robot = robots[i];
+            outboxes[i] = new RobotOutbox(robot.mailPool, robot.delivery, robot.events);
+            robot.bufferInto(outboxes[i]);
+        }
+        this.independent = new int[robots.length];
+        this.coupled = new int[robots.length];
+        this.writerStamp = new int[floors + 3];
+        this.workers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+            private int count;
+
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "automail-robots-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.chunks = new ArrayList<Callable<Void>>(threads - 1);
+        for (int t = 1; t < threads; t++) {
+            final int chunk = t;
+            chunks.add(new Callable<Void>() {
+                public Void call() {
+                    stepChunk(chunk);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Steps every robot once, then makes their pool, delivery and log calls in robot order
+     * @throws ExcessiveDeliveryException if a robot does, after the calls of the robots before it
+     */
+    void step() throws ExcessiveDeliveryException {
+        classify();
+        if (independentCount < MIN_PARALLEL) {
+            for (int i = 0; i < independentCount; i++) stepRobot(independent[i]);
+        } else {
+            List<Future<Void>> running = new ArrayList<Future<Void>>(chunks.size());
+            for (Callable<Void> chunk : chunks) running.add(workers.submit(chunk));
+            stepChunk(0);
+            await(running);
+        }
+        for (int i = 0; i < coupledCount; i++) stepRobot(coupled[i]);
+        merge();
+    }
+
+    /** Shuts down the worker threads */
+    void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Splits the fleet in robot order. Writers mark the floors their occupancy entry can
+     * be on after the step, readers look one floor either side of them.
+     */
+    private void classify() {
+        tick++;
+        independentCount = 0;
+        coupledCount = 0;
+        for (int i = 0; i < robots.length; i++) {
+            Robot robot = robots[i];
+            int floor = robot.getCurrentFloor() + 1;
+            if (robot.changesOccupancy()) {
+                mark(floor - 1);
+                mark(floor);
+                mark(floor + 1);
+                coupled[coupledCount++] = i;
+            } else if (robot.readsOccupancy() && (marked(floor - 1) || marked(floor + 1))) {
+                coupled[coupledCount++] = i;
+            } else {
+                independent[independentCount++] = i;
+            }
+        }
+    }
+
+    private void mark(int slot) {
+        if (slot >= writerStamp.length) {
+            int[] grown = new int[Math.max(slot + 1, writerStamp.length * 2)];
+            System.arraycopy(writerStamp, 0, grown, 0, writerStamp.length);
+            writerStamp = grown;
+        }
+        if (slot >= 0) writerStamp[slot] = tick;
+    }
+
+    private boolean marked(int slot) {
+        return slot >= 0 && slot < writerStamp.length && writerStamp[slot] == tick;
+    }
+
+    /** Steps the chunk'th contiguous share of the independent robots */
+    private void stepChunk(int chunk) {
+        int from = (int) ((long) independentCount * chunk / threads);
+        int to = (int) ((long) independentCount * (chunk + 1) / threads);
+        for (int i = from; i < to; i++) stepRobot(independent[i]);
+    }
+
+    private void stepRobot(int i) {
+        try {
+            robots[i].step();
+        } catch (Throwable e) {
+            failures[i] = e;
+        }
+    }
+
+    private static void await(List<Future<Void>> running) {
+        boolean interrupted = false;
+        for (Future<Void> future : running) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Robot worker failed", e.getCause());
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Replays the outboxes in robot order. A robot that failed stops the replay after its
+     * own calls, as stepping in turn would have stopped before the robots after it.
+     */
+    private void merge() throws ExcessiveDeliveryException {
+        for (int i = 0; i < robots.length; i++) {
+            outboxes[i].replay();
+            Throwable failure = failures[i];
+            if (failure != null) {
+                for (int j = i; j < robots.length; j++) failures[j] = null;
+                if (failure instanceof ExcessiveDeliveryException) throw (ExcessiveDeliveryException) failure;
+                if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+                if (failure instanceof Error) throw (Error) failure;
+                throw new IllegalStateException(failure);
+            }
+        }
+    }
+}
@@ -1,26 +1,33 @@
 package automail;
 
+import java.io.IOException;
+
 import exceptions.BreakingFragileItemException;
 import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
-import java.util.Map;
-import java.util.TreeMap;
+import strategies.IRobotPool;
 
 /**
  * The robot delivers mail!
  */
-public abstract class Robot {
+public abstract class Robot implements ICheckpointable {
 	
     static public final int INDIVIDUAL_MAX_WEIGHT = 2000;
     public enum RobotState { DELIVERING, WAITING, RETURNING, WRAPPING, UNWRAPPING}
+    /** The simulation this robot belongs to */
+    protected final SimulationContext context;
     protected IMailDelivery delivery;
-    protected final String id;
+    /** The dense robot index, unique within a simulation */
+    protected final int index;
+    private String id;
     /** Possible states the robot can be in */
     public RobotState current_state;
     protected int current_floor;
     protected int destination_floor;
-    protected IMailPool mailPool;
+    protected IRobotPool mailPool;
+    /** Where the robot reports its state changes and repools, normally the log */
+    protected IRobotEvents events;
     protected boolean receivedDispatch;
     
     protected MailItem deliveryItem = null;
@@ -60,14 +67,17 @@ public abstract class Robot {
      * @param behaviour governs selection of mail items for delivery and behaviour on priority arrivals
      * @param delivery governs the final delivery
      * @param mailPool is the source of mail items
+     * @param context the simulation the robot runs in, which also gives it its id
      */
-    public Robot(IMailDelivery delivery, IMailPool mailPool){
-    	id = "R" + hashCode();
+    public Robot(IMailDelivery delivery, IMailPool mailPool, SimulationContext context){
+    	this.context = context;
+    	this.index = context.robotIds.next();
         // current_state = RobotState.WAITING;
     	current_state = RobotState.RETURNING;
         current_floor = Building.MAILROOM_LOCATION;
         this.delivery = delivery;
         this.mailPool = mailPool;
+        this.events = context.log;
         this.receivedDispatch = false;
         this.deliveryCounter = 0;
     }
@@ -98,9 +108,41 @@ public abstract class Robot {
             current_floor--;
         }
     }
-    
-    String getIdTube() {
-    	return String.format("%s(%1d)", id, (tube == null ? 0 : 1));
+
+    /**
+     * Used by the event driven engine to find the next tick where something happens
+     * @return how many coming steps will only move the robot a floor or leave it waiting,
+     * 0 if the next step does anything else, Integer.MAX_VALUE if the robot is idle until dispatched
+     */
+    public int idleSteps() {
+        switch (current_state) {
+            case WAITING:
+                return !isEmpty() && receivedDispatch ? 0 : Integer.MAX_VALUE;
+            case RETURNING:
+                return Math.abs(current_floor - Building.MAILROOM_LOCATION);
+            case DELIVERING:
+                return Math.abs(current_floor - destination_floor);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Does the given number of steps at once, no more than idleSteps() allows
+     * @param steps the number of steps to skip
+     */
+    public void skipSteps(int steps) {
+        assert(steps <= idleSteps());
+        switch (current_state) {
+            case RETURNING:
+                current_floor += current_floor < Building.MAILROOM_LOCATION ? steps : -steps;
+                break;
+            case DELIVERING:
+                current_floor += current_floor < destination_floor ? steps : -steps;
+                break;
+            default:
+                break;
+        }
     }
     
     /**
@@ -110,16 +152,91 @@ public abstract class Robot {
     protected void changeState(RobotState nextState){
     	assert(!(deliveryItem == null && tube != null));
     	if (current_state != nextState) {
-            System.out.printf("T: %3d > %7s changed from %s to %s%n", Clock.Time(), getIdTube(), current_state, nextState);
+            events.stateChange(context.clock.Time(), index, current_floor, tube != null, current_state, nextState);
     	}
     	current_state = nextState;
-    	// if the robot has fragileItem, then print it
-    	if(nextState == RobotState.DELIVERING && fragileItem == null){
-            System.out.printf("T: %3d > %9s-> [%s]%n", Clock.Time(), getIdTube(), deliveryItem.toString());
+    	// print the item the robot is now heading for
+    	if(nextState == RobotState.DELIVERING){
+            events.dispatch(context.clock.Time(), index, current_floor, tube != null, target());
     	}
-    	//if the robot does not have the fragileItem, then print the deliveryItem
-        if(nextState == RobotState.DELIVERING && fragileItem != null){
-            System.out.printf("T: %3d > %9s-> [%s]%n", Clock.Time(), getIdTube(), fragileItem.toString());
+    }
+
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        out.writeByte(current_state.ordinal());
+        out.writeInt(current_floor);
+        out.writeInt(destination_floor);
+        out.writeBoolean(receivedDispatch);
+        out.writeMail(deliveryItem);
+        out.writeMail(tube);
+        out.writeMail(fragileItem);
+        out.writeInt(deliveryCounter);
+        out.writeInt(wrapUnwrapTime);
+        out.writeInt(normalPackageDelivered);
+        out.writeInt(cautionPackageDelivered);
+        out.writeInt(normalPackageDeliveredWeight);
+        out.writeInt(cautionPackageDeliveredWeight);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        current_state = RobotState.values()[in.readByte()];
+        current_floor = in.readInt();
+        destination_floor = in.readInt();
+        receivedDispatch = in.readBoolean();
+        deliveryItem = in.readMail();
+        tube = in.readMail();
+        fragileItem = in.readMail();
+        deliveryCounter = in.readInt();
+        wrapUnwrapTime = in.readInt();
+        normalPackageDelivered = in.readInt();
+        cautionPackageDelivered = in.readInt();
+        normalPackageDeliveredWeight = in.readInt();
+        cautionPackageDeliveredWeight = in.readInt();
+    }
+
+    /**
+     * Sends everything the robot would pass to the pool, the delivery or the log to an
+     * outbox instead, so the robot can be stepped off the simulation thread
+     */
+    void bufferInto(RobotOutbox outbox) {
+        delivery = outbox;
+        mailPool = outbox;
+        events = outbox;
+    }
+
+    /**
+     * @return whether the next step may change what other robots see of this one, such as
+     * the floors caution robots are unwrapping on
+     */
+    public boolean changesOccupancy() {
+        return false;
+    }
+
+    /**
+     * @return whether the next step may depend on what other robots are doing
+     */
+    public boolean readsOccupancy() {
+        return false;
+    }
+
+    /**
+     * @return the item the robot delivers next, the fragile item if it has one
+     */
+    protected MailItem target() {
+        return fragileItem == null ? deliveryItem : fragileItem;
+    }
+
+    /**
+     * When routes are swept, swaps the hand and tube items if need be so the hand item is
+     * for the lower floor. The stops are then made in one pass up the shaft.
+     */
+    protected void planRoute() {
+        if (context.config.sweepRoutes && deliveryItem != null && tube != null
+                && tube.getDestFloor() < deliveryItem.getDestFloor()) {
+            MailItem lower = tube;
+            tube = deliveryItem;
+            deliveryItem = lower;
         }
     }
 
@@ -128,16 +245,31 @@ public abstract class Robot {
 	}
 	public MailItem getSpecialArms() {return fragileItem;}
     public MailItem getArms() {return deliveryItem;}
+
+    public int getCurrentFloor() {
+        return current_floor;
+    }
     
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
+	/**
+	 * @return the robot identifier, as R followed by its index
+	 */
+	public String getId() {
+		if (id == null) id = "R" + index;
+		return id;
+	}
+
+	public int getIndex() {
+		return index;
+	}
 
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return index;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Robot && ((Robot) other).index == index;
 	}
 
     /**
@@ -0,0 +1,127 @@
+package automail;
+
+import java.util.Arrays;
+
+import strategies.IRobotPool;
+
+/**
+ * Stands in for the pool, the delivery and the log while one robot steps off the
+ * simulation thread. The calls are kept in order and replayed on the simulation thread
+ * afterwards, so every robot's effects land in the same order as stepping the fleet in turn.
+ */
+final class RobotOutbox implements IRobotPool, IMailDelivery, IRobotEvents {
+
+    private static final byte ADD_TO_POOL = 0;
+    private static final byte REGISTER_WAITING = 1;
+    private static final byte DELIVER = 2;
+    private static final byte REPOOL = 3;
+    private static final byte STATE_CHANGE = 4;
+    private static final byte DISPATCH = 5;
+
+    private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+
+    private final IRobotPool mailPool;
+    private final IMailDelivery delivery;
+    private final IRobotEvents events;
+
+    /** The calls so far as parallel arrays, a robot makes only a handful per step */
+    private int size;
+    private byte[] op = new byte[8];
+    private int[] time = new int[8];
+    private int[] robot = new int[8];
+    private int[] floor = new int[8];
+    /** Tube flag and states of a state change, packed as the log does */
+    private int[] flags = new int[8];
+    private Object[] ref = new Object[8];
+
+    /**
+     * @param mailPool where pool calls are replayed
+     * @param delivery where deliveries are replayed
+     * @param events where log events are replayed
+     */
+    RobotOutbox(IRobotPool mailPool, IMailDelivery delivery, IRobotEvents events) {
+        this.mailPool = mailPool;
+        this.delivery = delivery;
+        this.events = events;
+    }
+
+    @Override
+    public void addToPool(MailItem mailItem) {
+        add(ADD_TO_POOL, 0, 0, 0, 0, mailItem);
+    }
+
+    @Override
+    public void registerWaiting(Robot robot) {
+        add(REGISTER_WAITING, 0, 0, 0, 0, robot);
+    }
+
+    @Override
+    public void deliver(MailItem mailItem) {
+        add(DELIVER, 0, 0, 0, 0, mailItem);
+    }
+
+    @Override
+    public void repool(int time, MailItem mailItem) {
+        add(REPOOL, time, 0, 0, 0, mailItem);
+    }
+
+    @Override
+    public void stateChange(int time, int robot, int floor, boolean tube, Robot.RobotState from, Robot.RobotState to) {
+        add(STATE_CHANGE, time, robot, floor, (tube ? 1 : 0) | from.ordinal() << 8 | to.ordinal() << 16, null);
+    }
+
+    @Override
+    public void dispatch(int time, int robot, int floor, boolean tube, MailItem mailItem) {
+        add(DISPATCH, time, robot, floor, tube ? 1 : 0, mailItem);
+    }
+
+    /**
+     * Makes every buffered call, in the order the robot made them, and empties the outbox
+     */
+    void replay() {
+        for (int i = 0; i < size; i++) {
+            switch (op[i]) {
+                case ADD_TO_POOL:
+                    mailPool.addToPool((MailItem) ref[i]);
+                    break;
+                case REGISTER_WAITING:
+                    mailPool.registerWaiting((Robot) ref[i]);
+                    break;
+                case DELIVER:
+                    delivery.deliver((MailItem) ref[i]);
+                    break;
+                case REPOOL:
+                    events.repool(time[i], (MailItem) ref[i]);
+                    break;
+                case STATE_CHANGE:
+                    events.stateChange(time[i], robot[i], floor[i], (flags[i] & 1) != 0,
+                            STATES[flags[i] >> 8 & 0xff], STATES[flags[i] >> 16 & 0xff]);
+                    break;
+                case DISPATCH:
+                    events.dispatch(time[i], robot[i], floor[i], (flags[i] & 1) != 0, (MailItem) ref[i]);
+                    break;
+            }
+            ref[i] = null;
+        }
+        size = 0;
+    }
+
+    private void add(byte type, int now, int robotIndex, int atFloor, int packed, Object item) {
+        if (size == op.length) {
+            int capacity = size * 2;
+            op = Arrays.copyOf(op, capacity);
+            time = Arrays.copyOf(time, capacity);
+            robot = Arrays.copyOf(robot, capacity);
+            floor = Arrays.copyOf(floor, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            ref = Arrays.copyOf(ref, capacity);
+        }
+        op[size] = type;
+        time[size] = now;
+        robot[size] = robotIndex;
+        floor[size] = atFloor;
+        flags[size] = packed;
+        ref[size] = item;
+        size++;
+    }
+}
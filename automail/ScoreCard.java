@@ -0,0 +1,186 @@
+package automail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Scores a run as it goes, one delivery at a time, in memory that does not grow with the
+ * number of deliveries: the original score, latency percentiles overall and for fragile
+ * and normal mail, latency by destination floor, and any further objectives added.
+ */
+public class ScoreCard implements ICheckpointable {
+
+    private final DeliveryScore score = new DeliveryScore();
+    private final List<IScoreObjective> objectives = new ArrayList<IScoreObjective>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram fragileLatency = new LatencyHistogram();
+    private final LatencyHistogram normalLatency = new LatencyHistogram();
+    private long[] floorCount;
+    private long[] floorLatency;
+    private int[] floorMaxLatency;
+
+    /**
+     * @param floors the number of floors, more are added if mail goes higher
+     */
+    public ScoreCard(int floors) {
+        floors = Math.max(floors, 1);
+        floorCount = new long[floors];
+        floorLatency = new long[floors];
+        floorMaxLatency = new int[floors];
+        objectives.add(score);
+    }
+
+    /**
+     * Scores every delivery from now on by another objective as well
+     */
+    public void add(IScoreObjective objective) {
+        objectives.add(objective);
+    }
+
+    /**
+     * @param now the time of the delivery
+     * @param mailItem the item delivered
+     */
+    public void record(int now, MailItem mailItem) {
+        int wait = now - mailItem.getArrivalTime();
+        for (int i = 0; i < objectives.size(); i++) {
+            objectives.get(i).record(wait, mailItem);
+        }
+        latency.record(wait);
+        (mailItem.getFragile() ? fragileLatency : normalLatency).record(wait);
+        int floor = mailItem.getDestFloor() - Building.LOWEST_FLOOR;
+        if (floor >= floorCount.length) {
+            int n = Math.max(floor + 1, floorCount.length * 2);
+            floorCount = Arrays.copyOf(floorCount, n);
+            floorLatency = Arrays.copyOf(floorLatency, n);
+            floorMaxLatency = Arrays.copyOf(floorMaxLatency, n);
+        }
+        floorCount[floor]++;
+        floorLatency[floor] += Math.max(wait, 0);
+        if (wait > floorMaxLatency[floor]) floorMaxLatency[floor] = wait;
+    }
+
+    /**
+     * Added objectives are saved too, so they have to be ICheckpointable as well
+     */
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        out.writeInt(objectives.size());
+        for (IScoreObjective objective : objectives) {
+            checkpointable(objective).save(out);
+        }
+        latency.save(out);
+        fragileLatency.save(out);
+        normalLatency.save(out);
+        out.writeInt(floorCount.length);
+        for (int i = 0; i < floorCount.length; i++) {
+            out.writeLong(floorCount[i]);
+            out.writeLong(floorLatency[i]);
+            out.writeInt(floorMaxLatency[i]);
+        }
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        if (in.readInt() != objectives.size()) {
+            throw new IOException("Snapshot was scored by different objectives");
+        }
+        for (IScoreObjective objective : objectives) {
+            checkpointable(objective).restore(in);
+        }
+        latency.restore(in);
+        fragileLatency.restore(in);
+        normalLatency.restore(in);
+        int floors = in.readInt();
+        floorCount = new long[floors];
+        floorLatency = new long[floors];
+        floorMaxLatency = new int[floors];
+        for (int i = 0; i < floors; i++) {
+            floorCount[i] = in.readLong();
+            floorLatency[i] = in.readLong();
+            floorMaxLatency[i] = in.readInt();
+        }
+    }
+
+    private static ICheckpointable checkpointable(IScoreObjective objective) throws IOException {
+        if (!(objective instanceof ICheckpointable)) {
+            throw new IOException(objective.getName() + " cannot be saved in a snapshot");
+        }
+        return (ICheckpointable) objective;
+    }
+
+    /**
+     * @return the original score, the sum of each delivery's latency to the power 1.2
+     */
+    public double getTotalScore() {
+        return score.getValue();
+    }
+
+    /**
+     * @return every objective, starting with the original score
+     */
+    public List<IScoreObjective> getObjectives() {
+        return Collections.unmodifiableList(objectives);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getFragileLatency() {
+        return fragileLatency;
+    }
+
+    public LatencyHistogram getNormalLatency() {
+        return normalLatency;
+    }
+
+    /**
+     * @return the number of floors latency is kept for
+     */
+    public int getFloors() {
+        return floorCount.length;
+    }
+
+    public long getFloorDeliveries(int floor) {
+        int i = floor - Building.LOWEST_FLOOR;
+        return i < floorCount.length ? floorCount[i] : 0;
+    }
+
+    public double getFloorMeanLatency(int floor) {
+        int i = floor - Building.LOWEST_FLOOR;
+        return i >= floorCount.length || floorCount[i] == 0 ? Double.NaN : (double) floorLatency[i] / floorCount[i];
+    }
+
+    public int getFloorMaxLatency(int floor) {
+        int i = floor - Building.LOWEST_FLOOR;
+        return i < floorCount.length ? floorMaxLatency[i] : 0;
+    }
+
+    /**
+     * Writes the latency breakdown and any added objectives to the log summary
+     */
+    public void report(EventLog log) {
+        latency(log, "Latency", latency);
+        latency(log, "Latency of fragile mail", fragileLatency);
+        latency(log, "Latency of normal mail", normalLatency);
+        for (int i = 0; i < floorCount.length; i++) {
+            if (floorCount[i] == 0) continue;
+            int floor = i + Building.LOWEST_FLOOR;
+            log.summary("Floor %3d: %d delivered, mean latency %.2f, max %d%n",
+                    floor, floorCount[i], getFloorMeanLatency(floor), floorMaxLatency[i]);
+        }
+        for (int i = 1; i < objectives.size(); i++) {
+            log.summary("%s: %.2f%n", objectives.get(i).getName(), objectives.get(i).getValue());
+        }
+    }
+
+    private static void latency(EventLog log, String name, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) return;
+        log.summary("%s: mean %.2f, p50 %d, p95 %d, p99 %d, max %d%n", name, histogram.getMean(),
+                histogram.percentile(50), histogram.percentile(95), histogram.percentile(99), histogram.getMax());
+    }
+}
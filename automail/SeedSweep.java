@@ -0,0 +1,194 @@
+package automail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import strategies.FleetStatistics;
+
+/**
+ * Runs the configuration in automail.properties over a range of seeds in parallel,
+ * all in one JVM, and reports the spread of the results.
+ * Usage: SeedSweep firstSeed lastSeed [parallelism]
+ */
+public class SeedSweep {
+
+    /** The results of one seed */
+    public static class Run {
+        public final int seed;
+        public final int finalTime;
+        public final int delivered;
+        public final double score;
+        public final double meanLatency;
+        public final int p99Latency;
+        public final FleetStatistics statistics;
+        /** The exception that stopped the run, or null */
+        public final Throwable failure;
+
+        Run(int seed, SimulationContext context) {
+            this.seed = seed;
+            this.finalTime = context.getFinalTime();
+            this.delivered = context.getDelivered();
+            this.score = context.getTotalScore();
+            this.meanLatency = context.getScores().getLatency().getMean();
+            this.p99Latency = context.getScores().getLatency().percentile(99);
+            this.statistics = context.getAutomail() == null ? null : context.getAutomail().collectStatistics();
+            this.failure = context.isComplete() ? null : context.getFailure();
+        }
+
+        Run(int seed, int finalTime, int delivered, double score, double meanLatency, int p99Latency,
+                FleetStatistics statistics, Throwable failure) {
+            this.seed = seed;
+            this.finalTime = finalTime;
+            this.delivered = delivered;
+            this.score = score;
+            this.meanLatency = meanLatency;
+            this.p99Latency = p99Latency;
+            this.statistics = statistics;
+            this.failure = failure;
+        }
+    }
+
+    /** Mean, percentiles and confidence interval of one measure over every completed run */
+    public static class Summary {
+        public final String name;
+        public final int count;
+        public final double mean;
+        public final double stddev;
+        public final double min;
+        public final double p50;
+        public final double p95;
+        public final double p99;
+        public final double max;
+        /** Half width of the 95% confidence interval of the mean */
+        public final double ci95;
+
+        public Summary(String name, double[] values) {
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            this.name = name;
+            this.count = sorted.length;
+            double sum = 0;
+            for (double value : sorted) sum += value;
+            this.mean = count == 0 ? Double.NaN : sum / count;
+            double squares = 0;
+            for (double value : sorted) squares += (value - mean) * (value - mean);
+            this.stddev = count < 2 ? 0 : Math.sqrt(squares / (count - 1));
+            this.min = percentile(sorted, 0);
+            this.p50 = percentile(sorted, 50);
+            this.p95 = percentile(sorted, 95);
+            this.p99 = percentile(sorted, 99);
+            this.max = percentile(sorted, 100);
+            this.ci95 = count == 0 ? Double.NaN : 1.96 * stddev / Math.sqrt(count);
+        }
+
+        /** Nearest rank percentile of sorted values */
+        private static double percentile(double[] sorted, double p) {
+            if (sorted.length == 0) return Double.NaN;
+            int rank = (int) Math.ceil(p / 100 * sorted.length);
+            return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-31s n=%-5d mean=%12.2f +/-%10.2f sd=%12.2f min=%12.2f p50=%12.2f p95=%12.2f p99=%12.2f max=%12.2f",
+                    name, count, mean, ci95, stddev, min, p50, p95, p99, max);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 2) {
+            System.out.println("Usage: SeedSweep firstSeed lastSeed [parallelism]");
+            return;
+        }
+        int firstSeed = Integer.parseInt(args[0]);
+        int lastSeed = Integer.parseInt(args[1]);
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        SimulationConfig config = SimulationConfig.fromProperties(SimulationConfig.loadProperties("automail.properties"));
+
+        long start = System.nanoTime();
+        List<Run> runs = sweep(config, firstSeed, lastSeed, parallelism);
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        for (Run run : runs) {
+            if (run.failure != null) {
+                failed++;
+                System.out.printf("Seed %d failed: %s%n", run.seed, run.failure);
+            }
+        }
+        System.out.printf("Seeds %d to %d, %d runs, %d failed, %d threads, %.2f s%n",
+                firstSeed, lastSeed, runs.size(), failed, parallelism, elapsed / 1e9);
+        for (Summary summary : summarise(runs)) {
+            System.out.println(summary);
+        }
+    }
+
+    /**
+     * Runs every seed from firstSeed to lastSeed inclusive with logging turned off
+     * @param config the settings shared by every run, its seed is ignored
+     * @param parallelism the number of simulations to run at once
+     * @return the results in seed order
+     */
+    public static List<Run> sweep(SimulationConfig config, int firstSeed, int lastSeed, int parallelism)
+            throws InterruptedException, ExecutionException {
+        ForkJoinPool workers = new ForkJoinPool(parallelism);
+        try {
+            List<Future<Run>> futures = new ArrayList<Future<Run>>();
+            for (int seed = firstSeed; seed <= lastSeed; seed++) {
+                final SimulationConfig runConfig = config.copy().headless();
+                runConfig.seed = seed;
+                futures.add(workers.submit(new Callable<Run>() {
+                    public Run call() {
+                        return new Run(runConfig.seed, Simulation.run(runConfig));
+                    }
+                }));
+            }
+            List<Run> runs = new ArrayList<Run>(futures.size());
+            for (Future<Run> future : futures) {
+                runs.add(future.get());
+            }
+            return runs;
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * @param runs the results of a sweep
+     * @return summaries of each measure over the runs that completed
+     */
+    public static List<Summary> summarise(List<Run> runs) {
+        List<Run> completed = new ArrayList<Run>();
+        for (Run run : runs) {
+            if (run.failure == null) completed.add(run);
+        }
+        int n = completed.size();
+        double[][] measures = new double[9][n];
+        for (int i = 0; i < n; i++) {
+            Run run = completed.get(i);
+            measures[0][i] = run.finalTime;
+            measures[1][i] = run.score;
+            measures[2][i] = run.statistics.normalPackageDelivered;
+            measures[3][i] = run.statistics.cautionPackageDelivered;
+            measures[4][i] = run.statistics.normalPackageDeliveredWeight;
+            measures[5][i] = run.statistics.cautionPackageDeliveredWeight;
+            measures[6][i] = run.statistics.wrapUnwrapTime;
+            measures[7][i] = run.meanLatency;
+            measures[8][i] = run.p99Latency;
+        }
+        String[] names = { "Final delivery time", "Score", "Delivered normally", "Delivered using caution",
+                "Weight delivered normally", "Weight delivered using caution", "Wrap & unwrap time",
+                "Mean latency", "99th percentile latency" };
+        List<Summary> summaries = new ArrayList<Summary>();
+        for (int m = 0; m < names.length; m++) {
+            summaries.add(new Summary(names[m], measures[m]));
+        }
+        return summaries;
+    }
+}
@@ -8,133 +8,251 @@ import strategies.Automail;
 import strategies.IMailPool;
 import strategies.MailPool;
 
-import java.io.FileReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Properties;
+import java.io.UncheckedIOException;
 
 /**
  * This class simulates the behaviour of AutoMail
  */
 public class Simulation {
-    /** Constant for the mail generator */
-    private static int MAIL_TO_CREATE;
-    private static int MAIL_MAX_WEIGHT;
-    
-    public static boolean CAUTION_ENABLED;
-    public static boolean FRAGILE_ENABLED;
-    public static boolean STATISTICS_ENABLED;
-    
-    private static ArrayList<MailItem> MAIL_DELIVERED;
-    private static double total_score = 0;
 
-    public static void main(String[] args) throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException {
-    	Properties automailProperties = new Properties();
-		// Default properties
-    	automailProperties.setProperty("Robots", "Standard");
-    	automailProperties.setProperty("MailPool", "strategies.SimpleMailPool");
-    	automailProperties.setProperty("Floors", "10");
-    	automailProperties.setProperty("Mail_to_Create", "80");
-    	automailProperties.setProperty("Last_Delivery_Time", "100");
-    	automailProperties.setProperty("Caution", "false");
-    	automailProperties.setProperty("Fragile", "false");
-    	automailProperties.setProperty("Statistics", "false");
+    /** Named by the original properties template but never written, MailPool is what ran */
+    private static final String TEMPLATE_MAIL_POOL = "strategies.SimpleMailPool";
 
+    public static void main(String[] args) throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException {
     	// Read properties
-		FileReader inStream = null;
-		try {
-			inStream = new FileReader("automail.properties");
-			automailProperties.load(inStream);
-		} finally {
-			 if (inStream != null) {
-	                inStream.close();
-	            }
-		}
+    	SimulationConfig config = SimulationConfig.fromProperties(SimulationConfig.loadProperties("automail.properties"));
+
+        /** Read the first argument and save it as a seed if it exists, it overrides the property */
+        if (args.length > 0) {
+        	config.seed = Integer.parseInt(args[0]);
+        }
+        run(config);
+    }
+
+    /**
+     * Runs one simulation to completion, reporting to a log at the configured level
+     * @param config the settings for the run
+     * @return the finished simulation, holding the results
+     */
+    public static SimulationContext run(SimulationConfig config) {
+        return run(new SimulationContext(config));
+    }
 
-		//Seed
-		String seedProp = automailProperties.getProperty("Seed");
-		// Floors
-		Building.FLOORS = Integer.parseInt(automailProperties.getProperty("Floors"));
-        System.out.println("Floors: " + Building.FLOORS);
-		// Mail_to_Create
-		MAIL_TO_CREATE = Integer.parseInt(automailProperties.getProperty("Mail_to_Create"));
-        System.out.println("Mail_to_Create: " + MAIL_TO_CREATE);
-        // Mail_to_Create
-     	MAIL_MAX_WEIGHT = Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight"));
-        System.out.println("Mail_Max_Weight: " + MAIL_MAX_WEIGHT);
-		// Last_Delivery_Time
-		Clock.LAST_DELIVERY_TIME = Integer.parseInt(automailProperties.getProperty("Last_Delivery_Time"));
-        System.out.println("Last_Delivery_Time: " + Clock.LAST_DELIVERY_TIME);
-        // Caution ability
-        CAUTION_ENABLED = Boolean.parseBoolean(automailProperties.getProperty("Caution"));
-        System.out.println("Caution enabled: " + CAUTION_ENABLED);
-        // Fragile mail generation
-        FRAGILE_ENABLED = Boolean.parseBoolean(automailProperties.getProperty("Fragile"));
-        System.out.println("Fragile enabled: " + FRAGILE_ENABLED);
-        // Statistics tracking
-        STATISTICS_ENABLED = Boolean.parseBoolean(automailProperties.getProperty("Statistics"));
-        System.out.println("Statistics enabled: " + STATISTICS_ENABLED);
+    /**
+     * Runs a simulation the caller has made the context of, as to score it by further
+     * objectives or stop it early
+     * @param context a context that has not been run
+     * @return the same context, holding the results
+     */
+    public static SimulationContext run(SimulationContext context) {
+        SimulationConfig config = context.config;
+        TraceRecorder trace = null;
+        try {
+            if (context.metrics != null) {
+                context.metrics.register();
+            }
+            if (config.traceFile != null) {
+                trace = new TraceRecorder(new File(config.traceFile));
+                context.log.addListener(trace);
+            }
+            simulate(context);
+        } catch (IOException e) {
+            e.printStackTrace();
+            context.fail(e);
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            context.fail(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+            context.fail(e);
+        } finally {
+            context.log.close();
+            if (context.metrics != null) {
+                context.metrics.unregister();
+            }
+            if (context.getMailSource() instanceof Closeable) {
+                try {
+                    ((Closeable) context.getMailSource()).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (trace != null) {
+                try {
+                    trace.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Creates the IMailPool named by the MailPool property. It needs a public constructor
+     * taking the SimulationContext.
+     */
+    static IMailPool createMailPool(SimulationContext context) throws ReflectiveOperationException {
+        String name = context.config.mailPool.trim();
+        if (name.equals(TEMPLATE_MAIL_POOL)) {
+            return new MailPool(context);
+        }
+        Class<?> poolClass = Class.forName(name);
+        if (!IMailPool.class.isAssignableFrom(poolClass)) {
+            throw new InstantiationException(name + " is not an IMailPool");
+        }
+        return (IMailPool) poolClass.getConstructor(SimulationContext.class).newInstance(context);
+    }
+
+    private static void simulate(SimulationContext context) throws IOException, ReflectiveOperationException {
+        SimulationConfig config = context.config;
+        EventLog log = context.log;
+        log.summary("Floors: %d%n", config.floors);
+        log.summary("Mail_to_Create: %d%n", config.mailToCreate);
+        log.summary("Mail_Max_Weight: %d%n", config.mailMaxWeight);
+        log.summary("Last_Delivery_Time: %d%n", config.lastDeliveryTime);
+        log.summary("Caution enabled: %b%n", config.cautionEnabled);
+        log.summary("Fragile enabled: %b%n", config.fragileEnabled);
+        log.summary("Statistics enabled: %b%n", config.statisticsEnabled);
 		// Robots
-		int robots = Integer.parseInt(automailProperties.getProperty("Robots"));
-		System.out.print("Robots: "); System.out.println(robots);
+		int robots = config.robots;
+		log.summary("Robots: %d%n", robots);
 		assert(robots > 0);
 		// MailPool
-		IMailPool mailPool = new MailPool(robots);
+		IMailPool mailPool = createMailPool(context);
 
 		// End properties
-		
-        MAIL_DELIVERED = new ArrayList<MailItem>();
-                
-        /** Used to see whether a seed is initialized or not */
-        HashMap<Boolean, Integer> seedMap = new HashMap<>();
-        
-        /** Read the first argument and save it as a seed if it exists */
-        if (args.length == 0 ) { // No arg
-        	if (seedProp == null) { // and no property
-        		seedMap.put(false, 0); // so randomise
-        	} else { // Use property seed
-        		seedMap.put(true, Integer.parseInt(seedProp));
-        	}
-        } else { // Use arg seed - overrides property
-        	seedMap.put(true, Integer.parseInt(args[0]));
+
+        Integer seed = config.seed;
+        log.summary("Seed: %s%n", (seed == null ? "null" : seed.toString()));
+        Automail automail = new Automail(mailPool, new ReportDelivery(context), robots, context);
+        IMailSource mailSource;
+        MailGenerator mailGenerator = null;
+        if (config.workloadFile != null) {
+            log.summary("Workload: %s%n", config.workloadFile);
+            mailSource = new WorkloadSource(context, automail.mailPool, new File(config.workloadFile));
+        } else if (config.streamingMail) {
+            mailSource = mailGenerator = new StreamingMailGenerator(context, automail.mailPool, config.fragileEnabled);
+        } else if (context.getMailStore() != null) {
+            mailSource = mailGenerator = new ColumnarMailGenerator(context, automail.mailPool);
+        } else {
+            mailSource = mailGenerator = new MailGenerator(context, automail.mailPool);
+        }
+        context.setUp(automail, mailSource);
+        Clock clock = context.clock;
+        SimulationMetrics metrics = context.metrics;
+        if (metrics != null) {
+            metrics.addRobots(automail.robots);
         }
-        Integer seed = seedMap.get(true);
-        System.out.println("Seed: " + (seed == null ? "null" : seed.toString()));
-        Automail automail = new Automail(mailPool, new ReportDelivery(), robots);
-        MailGenerator mailGenerator = new MailGenerator(MAIL_TO_CREATE, MAIL_MAX_WEIGHT, automail.mailPool, seedMap);
         
-        /** Initiate all the mail */
-        mailGenerator.generateAllMail(FRAGILE_ENABLED);
-        while(MAIL_DELIVERED.size() != mailGenerator.MAIL_TO_CREATE) {
-            mailGenerator.step();
-            try {
-                automail.mailPool.step();
-				for (int i=0; i<robots; i++) {
-					automail.robots[i].step();
-				}
-			} catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException e) {
-				e.printStackTrace();
-				System.out.println("Simulation unable to complete.");
-				System.exit(0);
-			}
-            Clock.Tick();
+        if (config.resumeFile != null) {
+            /** Carry on from a snapshot, which holds the mail still to arrive */
+            Checkpoint.restore(context, new File(config.resumeFile));
+            log.summary("Resumed from %s at T: %d%n", config.resumeFile, clock.Time());
+        } else if (mailGenerator != null) {
+            /** Initiate all the mail */
+            mailGenerator.generateAllMail(config.fragileEnabled);
+        }
+        Checkpoint checkpoint = null;
+        if (config.checkpointFile != null) {
+            Checkpoint.check(context);
+            checkpoint = new Checkpoint(new File(config.checkpointFile), config.checkpointInterval);
+        }
+        int mailToCreate = mailSource.totalMail();
+        Watchdog watchdog = new Watchdog(config);
+        ParallelStepper stepper = config.robotThreads > 1
+                ? new ParallelStepper(automail.robots, config.floors, config.robotThreads) : null;
+        try {
+            while(context.getDelivered() != mailToCreate && context.getFailure() == null) {
+                if (config.eventDriven) {
+                    skipIdleTicks(context);
+                }
+                mailSource.step();
+                try {
+                    automail.mailPool.step();
+                    if (stepper != null) {
+                        stepper.step();
+                    } else {
+                        for (int i=0; i<robots; i++) {
+                            automail.robots[i].step();
+                        }
+                    }
+                } catch (ExcessiveDeliveryException|ItemTooHeavyException|BreakingFragileItemException e) {
+                    e.printStackTrace();
+                    log.summary("Simulation unable to complete.%n");
+                    context.fail(e);
+                    return;
+                }
+                clock.Tick();
+                if (metrics != null) {
+                    metrics.tick(clock.Time(), automail.mailPool.size());
+                }
+                watchdog.tick(context);
+                if (checkpoint != null) {
+                    checkpoint.tick(context);
+                }
+            }
+        } finally {
+            if (stepper != null) {
+                stepper.close();
+            }
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+        if (context.getFailure() != null) {
+            log.summary("T: %d | Simulation stopped: %s%n", clock.Time(), context.getFailure().getMessage());
+            return;
         }
-        printResults();
-        if (STATISTICS_ENABLED){
+        printResults(context);
+        if (config.statisticsEnabled){
 			automail.statistics(robots);
 		}
     }
     
+    /**
+     * Moves the clock straight to the next tick where mail arrives, the pool can load a robot
+     * or a robot does more than move a floor or wait. The skipped ticks would not have written
+     * anything, so the log and score are the same as stepping every tick.
+     */
+    private static void skipIdleTicks(SimulationContext context) {
+        Automail automail = context.getAutomail();
+        int robots = automail.robots.length;
+        int now = context.clock.Time();
+        int nextArrival = context.getMailSource().nextArrivalTime(now);
+        int skip = nextArrival == Integer.MAX_VALUE ? Integer.MAX_VALUE : nextArrival - now;
+        if (!automail.mailPool.isIdle()) {
+            skip = 0;
+        }
+        for (int i = 0; i < robots && skip > 0; i++) {
+            skip = Math.min(skip, automail.robots[i].idleSteps());
+        }
+        /** Nothing will ever happen again, leave it to the normal tick */
+        if (skip == 0 || skip == Integer.MAX_VALUE) {
+            return;
+        }
+        for (int i = 0; i < robots; i++) {
+            automail.robots[i].skipSteps(skip);
+        }
+        context.clock.Advance(skip);
+    }
+
     static class ReportDelivery implements IMailDelivery {
+
+    	private final SimulationContext context;
+
+    	ReportDelivery(SimulationContext context) {
+    		this.context = context;
+    	}
     	
     	/** Confirm the delivery and calculate the total score */
     	public void deliver(MailItem deliveryItem){
-    		if(!MAIL_DELIVERED.contains(deliveryItem)){
-    			MAIL_DELIVERED.add(deliveryItem);
-                System.out.printf("T: %3d > Deliv(%4d) [%s]%n", Clock.Time(), MAIL_DELIVERED.size(), deliveryItem.toString());
-    			// Calculate delivery score
-    			total_score += calculateDeliveryScore(deliveryItem);
+    		int now = context.clock.Time();
+    		if(context.recordDelivery(deliveryItem, now)){
+                context.log.delivery(now, context.getDelivered(), deliveryItem);
     		}
     		else{
     			try {
@@ -147,16 +265,12 @@ public class Simulation {
 
     }
     
-    private static double calculateDeliveryScore(MailItem deliveryItem) {
-    	// Penalty for longer delivery times
-    	final double penalty = 1.2;
-    	double priority_weight = 0;
-        return Math.pow(Clock.Time() - deliveryItem.getArrivalTime(),penalty)*(1+Math.sqrt(priority_weight));
-    }
-
-    public static void printResults(){
-        System.out.println("T: "+Clock.Time()+" | Simulation complete!");
-        System.out.println("Final Delivery time: "+Clock.Time());
-        System.out.printf("Final Score: %.2f%n", total_score);
+    public static void printResults(SimulationContext context){
+        context.log.summary("T: %d | Simulation complete!%n", context.clock.Time());
+        context.log.summary("Final Delivery time: %d%n", context.clock.Time());
+        context.log.summary("Final Score: %.2f%n", context.getTotalScore());
+        if (context.config.latencyReport) {
+            context.getScores().report(context.log);
+        }
     }
 }
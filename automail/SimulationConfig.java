@@ -0,0 +1,191 @@
+package automail;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * The settings for one simulation run, normally read from automail.properties
+ */
+public class SimulationConfig {
+
+    /** The number of floors in the building */
+    public int floors;
+    /** Roughly how many mail items to create, the generator varies this by +/-20% */
+    public int mailToCreate;
+    public int mailMaxWeight;
+    /** The latest time mail can arrive */
+    public int lastDeliveryTime;
+    public int robots;
+    /** The class name of the IMailPool implementation to use */
+    public String mailPool = "strategies.MailPool";
+    public boolean cautionEnabled;
+    public boolean fragileEnabled;
+    public boolean statisticsEnabled;
+    /** Jump the clock over ticks where nothing happens instead of stepping through them */
+    public boolean eventDriven;
+    /** Generate mail as it arrives rather than all before the run starts */
+    public boolean streamingMail;
+    /** A recorded workload to replay instead of generating mail, null to generate it */
+    public String workloadFile;
+    /** Make each load's stops in one sweep up the shaft rather than in the order loaded */
+    public boolean sweepRoutes;
+    /** Keep mail in a columnar MailStore rather than as objects, ignored when streaming or replaying a workload */
+    public boolean columnarMail;
+    /** Report latency percentiles and per floor latency with the results */
+    public boolean latencyReport;
+    /** Publish live metrics over JMX while the run is in progress */
+    public boolean metricsEnabled;
+    /** How many threads step the fleet each tick, 1 steps it on the simulation thread */
+    public int robotThreads = 1;
+    /** Where to keep a snapshot of the run to resume from, null for none */
+    public String checkpointFile;
+    /** How many ticks apart snapshots are taken */
+    public int checkpointInterval = 1000;
+    /** A snapshot to resume the run from instead of starting at tick 0, null to start afresh */
+    public String resumeFile;
+    /** Where to record a binary trace of the run, null for none */
+    public String traceFile;
+    /** How many ticks without a delivery while there is work to do end the run, 0 for 10 per floor plus 1000, negative never */
+    public int stallTicks;
+    /** The latest tick the run may reach, 0 for no limit */
+    public int maxTicks;
+    /** How long the run may take in seconds of wall clock time, 0 for no limit */
+    public double maxSeconds;
+    /** Where to write a snapshot of a run that is ended for stalling, null for none */
+    public String stallSnapshot;
+    public EventLog.Level logLevel = EventLog.Level.FULL;
+    /** The mail generator seed, null for a random one */
+    public Integer seed;
+
+    /**
+     * @return the properties used for anything automail.properties leaves out
+     */
+    public static Properties defaultProperties() {
+        Properties automailProperties = new Properties();
+        automailProperties.setProperty("Robots", "Standard");
+        automailProperties.setProperty("MailPool", "strategies.MailPool");
+        automailProperties.setProperty("Floors", "10");
+        automailProperties.setProperty("Mail_to_Create", "80");
+        automailProperties.setProperty("Last_Delivery_Time", "100");
+        automailProperties.setProperty("Caution", "false");
+        automailProperties.setProperty("Fragile", "false");
+        automailProperties.setProperty("Statistics", "false");
+        automailProperties.setProperty("Logging", "full");
+        automailProperties.setProperty("Engine", "tick");
+        automailProperties.setProperty("Mail_Generation", "eager");
+        automailProperties.setProperty("Mail_Store", "objects");
+        automailProperties.setProperty("Routing", "loaded");
+        automailProperties.setProperty("Metrics", "false");
+        automailProperties.setProperty("Latency_Report", "false");
+        automailProperties.setProperty("Robot_Threads", "1");
+        automailProperties.setProperty("Checkpoint_Interval", "1000");
+        automailProperties.setProperty("Stall_Ticks", "0");
+        automailProperties.setProperty("Max_Ticks", "0");
+        automailProperties.setProperty("Max_Seconds", "0");
+        return automailProperties;
+    }
+
+    /**
+     * Reads a properties file over the defaults
+     * @param fileName the file to read, normally automail.properties
+     */
+    public static Properties loadProperties(String fileName) throws IOException {
+        Properties automailProperties = defaultProperties();
+        FileReader inStream = null;
+        try {
+            inStream = new FileReader(fileName);
+            automailProperties.load(inStream);
+        } finally {
+            if (inStream != null) {
+                inStream.close();
+            }
+        }
+        return automailProperties;
+    }
+
+    /**
+     * @param automailProperties the settings, including any defaults
+     * @return the configuration they describe
+     */
+    public static SimulationConfig fromProperties(Properties automailProperties) {
+        SimulationConfig config = new SimulationConfig();
+        config.floors = Integer.parseInt(automailProperties.getProperty("Floors"));
+        config.mailToCreate = Integer.parseInt(automailProperties.getProperty("Mail_to_Create"));
+        config.mailMaxWeight = Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight"));
+        config.lastDeliveryTime = Integer.parseInt(automailProperties.getProperty("Last_Delivery_Time"));
+        config.cautionEnabled = Boolean.parseBoolean(automailProperties.getProperty("Caution"));
+        config.fragileEnabled = Boolean.parseBoolean(automailProperties.getProperty("Fragile"));
+        config.statisticsEnabled = Boolean.parseBoolean(automailProperties.getProperty("Statistics"));
+        config.eventDriven = automailProperties.getProperty("Engine").trim().equalsIgnoreCase("event");
+        config.streamingMail = automailProperties.getProperty("Mail_Generation").trim().equalsIgnoreCase("streaming");
+        config.sweepRoutes = automailProperties.getProperty("Routing").trim().equalsIgnoreCase("sweep");
+        config.columnarMail = automailProperties.getProperty("Mail_Store").trim().equalsIgnoreCase("columnar");
+        config.workloadFile = automailProperties.getProperty("Workload_File");
+        config.latencyReport = Boolean.parseBoolean(automailProperties.getProperty("Latency_Report"));
+        config.metricsEnabled = Boolean.parseBoolean(automailProperties.getProperty("Metrics"));
+        config.robotThreads = Integer.parseInt(automailProperties.getProperty("Robot_Threads").trim());
+        config.checkpointFile = automailProperties.getProperty("Checkpoint_File");
+        config.checkpointInterval = Integer.parseInt(automailProperties.getProperty("Checkpoint_Interval").trim());
+        config.resumeFile = automailProperties.getProperty("Resume_From");
+        config.traceFile = automailProperties.getProperty("Trace_File");
+        config.stallTicks = Integer.parseInt(automailProperties.getProperty("Stall_Ticks").trim());
+        config.maxTicks = Integer.parseInt(automailProperties.getProperty("Max_Ticks").trim());
+        config.maxSeconds = Double.parseDouble(automailProperties.getProperty("Max_Seconds").trim());
+        config.stallSnapshot = automailProperties.getProperty("Stall_Snapshot");
+        config.logLevel = EventLog.parseLevel(automailProperties.getProperty("Logging"));
+        config.robots = Integer.parseInt(automailProperties.getProperty("Robots"));
+        config.mailPool = automailProperties.getProperty("MailPool");
+        String seedProp = automailProperties.getProperty("Seed");
+        config.seed = seedProp == null ? null : Integer.valueOf(seedProp);
+        return config;
+    }
+
+    /**
+     * @return a separate configuration with the same settings, for varying one run of many
+     */
+    public SimulationConfig copy() {
+        SimulationConfig copy = new SimulationConfig();
+        copy.floors = floors;
+        copy.mailToCreate = mailToCreate;
+        copy.mailMaxWeight = mailMaxWeight;
+        copy.lastDeliveryTime = lastDeliveryTime;
+        copy.robots = robots;
+        copy.mailPool = mailPool;
+        copy.cautionEnabled = cautionEnabled;
+        copy.fragileEnabled = fragileEnabled;
+        copy.statisticsEnabled = statisticsEnabled;
+        copy.eventDriven = eventDriven;
+        copy.streamingMail = streamingMail;
+        copy.sweepRoutes = sweepRoutes;
+        copy.columnarMail = columnarMail;
+        copy.workloadFile = workloadFile;
+        copy.latencyReport = latencyReport;
+        copy.metricsEnabled = metricsEnabled;
+        copy.robotThreads = robotThreads;
+        copy.checkpointFile = checkpointFile;
+        copy.checkpointInterval = checkpointInterval;
+        copy.resumeFile = resumeFile;
+        copy.traceFile = traceFile;
+        copy.stallTicks = stallTicks;
+        copy.maxTicks = maxTicks;
+        copy.maxSeconds = maxSeconds;
+        copy.stallSnapshot = stallSnapshot;
+        copy.logLevel = logLevel;
+        copy.seed = seed;
+        return copy;
+    }
+
+    /**
+     * Turns logging off and drops the trace, checkpoint and resume files, for a run that is
+     * one of many and only wanted for its results
+     * @return this configuration
+     */
+    public SimulationConfig headless() {
+        logLevel = EventLog.Level.OFF;
+        traceFile = null;
+        checkpointFile = null;
+        resumeFile = null;
+        return this;
+    }
+}
@@ -0,0 +1,180 @@
+package automail;
+
+import java.io.IOException;
+
+import strategies.Automail;
+import strategies.IMailPool;
+
+/**
+ * Everything belonging to one simulation run: its clock, building, fleet, pool and results.
+ * Robots, pools and generators are given the context they run in, so any number of
+ * simulations can run side by side in the same JVM.
+ */
+public class SimulationContext {
+
+    public final SimulationConfig config;
+    public final Clock clock;
+    public final Building building;
+    public final EventLog log;
+    /** Live metrics for the run, null unless enabled */
+    public final SimulationMetrics metrics;
+    /** Numbers mail items from 0 in the order they are created */
+    public final IdAllocator mailIds = new IdAllocator();
+    /** Numbers robots from 0 in the order they are created */
+    public final IdAllocator robotIds = new IdAllocator();
+
+    private final MailStore mailStore;
+    private Automail automail;
+    private IMailSource mailSource;
+    private DeliveryLedger delivered;
+    private final ScoreCard scores;
+    /** Volatile as stop may be called from another thread */
+    private volatile Throwable failure;
+
+    /**
+     * @param config the settings for the run, not changed by the simulation
+     */
+    public SimulationContext(SimulationConfig config) {
+        this(config, new EventLog(config.logLevel));
+    }
+
+    /**
+     * @param config the settings for the run, not changed by the simulation
+     * @param log where the run is reported
+     */
+    public SimulationContext(SimulationConfig config, EventLog log) {
+        this.config = config;
+        this.clock = new Clock(config.lastDeliveryTime);
+        this.building = new Building(config.floors);
+        this.log = log;
+        this.scores = new ScoreCard(config.floors);
+        this.metrics = config.metricsEnabled ? new SimulationMetrics() : null;
+        if (metrics != null) log.addListener(metrics);
+        this.mailStore = config.columnarMail && !config.streamingMail && config.workloadFile == null
+                ? new MailStore(mailIds, config.mailToCreate + config.mailToCreate / 5 + 1) : null;
+    }
+
+    void setUp(Automail automail, IMailSource mailSource) {
+        this.automail = automail;
+        this.mailSource = mailSource;
+        this.delivered = new DeliveryLedger(mailSource.totalMail());
+    }
+
+    /**
+     * Records and scores a delivery
+     * @param now the time of the delivery
+     * @return false if the item had already been delivered
+     */
+    boolean recordDelivery(MailItem mailItem, int now) {
+        if (!delivered.record(mailItem.getIndex())) {
+            return false;
+        }
+        scores.record(now, mailItem);
+        return true;
+    }
+
+    /**
+     * Writes the clock, the mail numbering, the store and the results so far
+     */
+    void save(SnapshotOutput out) throws IOException {
+        out.writeInt(clock.Time());
+        out.writeInt(mailIds.allocated());
+        out.writeBoolean(mailStore != null);
+        if (mailStore != null) mailStore.save(out);
+        delivered.save(out);
+        scores.save(out);
+    }
+
+    /**
+     * Reads back what save wrote, once the run has been set up
+     */
+    void restore(SnapshotInput in) throws IOException {
+        clock.Advance(in.readInt() - clock.Time());
+        mailIds.restore(in.readInt());
+        if (in.readBoolean() != (mailStore != null)) {
+            throw new IOException("Snapshot was taken with a different Mail_Store");
+        }
+        if (mailStore != null) mailStore.restore(in);
+        delivered.restore(in);
+        scores.restore(in);
+    }
+
+    void fail(Throwable cause) {
+        failure = cause;
+    }
+
+    /**
+     * Ends the run as a failure once the current tick is over
+     * @param reason why it was stopped, as it will be reported
+     */
+    public void stop(Throwable reason) {
+        if (failure == null) {
+            failure = reason;
+        }
+    }
+
+    public Automail getAutomail() {
+        return automail;
+    }
+
+    public IMailPool getMailPool() {
+        return automail.mailPool;
+    }
+
+    /**
+     * @return the store mail is kept in, or null if mail is kept as objects
+     */
+    public MailStore getMailStore() {
+        return mailStore;
+    }
+
+    public IMailSource getMailSource() {
+        return mailSource;
+    }
+
+    /**
+     * @return the number of distinct items delivered so far
+     */
+    public int getDelivered() {
+        return delivered == null ? 0 : delivered.size();
+    }
+
+    /**
+     * @return the number of items that will arrive during the run
+     */
+    public int getMailToCreate() {
+        return mailSource.totalMail();
+    }
+
+    public double getTotalScore() {
+        return scores.getTotalScore();
+    }
+
+    /**
+     * @return the scores of the deliveries so far
+     */
+    public ScoreCard getScores() {
+        return scores;
+    }
+
+    /**
+     * @return the time of the last delivery once the run is complete
+     */
+    public int getFinalTime() {
+        return clock.Time();
+    }
+
+    /**
+     * @return whether every item was delivered
+     */
+    public boolean isComplete() {
+        return failure == null && delivered != null && delivered.size() == mailSource.totalMail();
+    }
+
+    /**
+     * @return the exception that stopped the run, or null if it did not fail
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,197 @@
+package automail;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live counters for one run, published over JMX as automail:type=Simulation,run=N.
+ * The simulation thread only adds to striped counters or writes a volatile as events
+ * happen, the sums are only worked out when a JMX client reads them.
+ */
+public class SimulationMetrics implements IEventListener, SimulationMetricsMXBean {
+
+    private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+    /** Bucket i holds latencies below 2^i, the last one everything longer */
+    private static final int LATENCY_BUCKETS = 24;
+    private static final AtomicInteger runs = new AtomicInteger();
+
+    private final LongAdder[] robotsByState = new LongAdder[STATES.length];
+    private final LongAdder arrived = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+    private final LongAdder latencyTotal = new LongAdder();
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+    private final LongAdder wrapUnwrapTime = new LongAdder();
+
+    private volatile int tick;
+    private volatile int poolDepth;
+    private volatile int deliveriesLastTick;
+
+    /** Only touched by the simulation thread */
+    private int deliveredAtLastTick;
+    private int wrapping;
+    private ObjectName name;
+
+    public SimulationMetrics() {
+        for (int i = 0; i < robotsByState.length; i++) robotsByState[i] = new LongAdder();
+        for (int i = 0; i < latency.length; i++) latency[i] = new LongAdder();
+    }
+
+    /**
+     * Counts robots created before the metrics started listening, in the state they are in now
+     */
+    public void addRobots(Robot[] robots) {
+        for (Robot robot : robots) {
+            robotsByState[robot.current_state.ordinal()].increment();
+            if (isWrapping(robot.current_state)) wrapping++;
+        }
+    }
+
+    /**
+     * Called by the simulation at the end of each tick it steps through
+     * @param now the time after the tick
+     * @param poolDepth the number of items left in the pool
+     */
+    public void tick(int now, int poolDepth) {
+        wrapUnwrapTime.add((long) wrapping * (now - tick));
+        int total = delivered.intValue();
+        deliveriesLastTick = total - deliveredAtLastTick;
+        deliveredAtLastTick = total;
+        this.poolDepth = poolDepth;
+        tick = now;
+    }
+
+    private static boolean isWrapping(Robot.RobotState state) {
+        return state == Robot.RobotState.WRAPPING || state == Robot.RobotState.UNWRAPPING;
+    }
+
+    @Override
+    public void arrival(int time, MailItem mailItem) {
+        arrived.increment();
+    }
+
+    @Override
+    public void repool(int time, MailItem mailItem) {
+    }
+
+    @Override
+    public void stateChange(int time, int robot, int floor, boolean tube, Robot.RobotState from, Robot.RobotState to) {
+        robotsByState[from.ordinal()].decrement();
+        robotsByState[to.ordinal()].increment();
+        if (isWrapping(from)) wrapping--;
+        if (isWrapping(to)) wrapping++;
+    }
+
+    @Override
+    public void dispatch(int time, int robot, int floor, boolean tube, MailItem mailItem) {
+    }
+
+    @Override
+    public void delivery(int time, int count, MailItem mailItem) {
+        int wait = time - mailItem.getArrivalTime();
+        delivered.increment();
+        latency[Math.min(32 - Integer.numberOfLeadingZeros(Math.max(wait, 0)), LATENCY_BUCKETS - 1)].increment();
+        latencyTotal.add(wait);
+        maxLatency.accumulate(wait);
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server. A failure is reported and the
+     * run carries on without them.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("automail:type=Simulation,run=" + runs.incrementAndGet());
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+            name = null;
+        }
+    }
+
+    public void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        name = null;
+    }
+
+    @Override
+    public int getTick() {
+        return tick;
+    }
+
+    @Override
+    public Map<String, Long> getRobotsByState() {
+        Map<String, Long> robots = new LinkedHashMap<String, Long>();
+        for (Robot.RobotState state : STATES) {
+            robots.put(state.name(), robotsByState[state.ordinal()].sum());
+        }
+        return robots;
+    }
+
+    @Override
+    public int getPoolDepth() {
+        return poolDepth;
+    }
+
+    @Override
+    public long getArrived() {
+        return arrived.sum();
+    }
+
+    @Override
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    @Override
+    public double getDeliveriesPerTick() {
+        int now = tick;
+        return now == 0 ? 0 : (double) delivered.sum() / now;
+    }
+
+    @Override
+    public int getDeliveriesLastTick() {
+        return deliveriesLastTick;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+        histogram.put("0", latency[0].sum());
+        for (int i = 1; i < LATENCY_BUCKETS - 1; i++) {
+            histogram.put((1 << (i - 1)) + "-" + ((1 << i) - 1), latency[i].sum());
+        }
+        histogram.put((1 << (LATENCY_BUCKETS - 2)) + "+", latency[LATENCY_BUCKETS - 1].sum());
+        return histogram;
+    }
+
+    @Override
+    public double getMeanLatency() {
+        long count = delivered.sum();
+        return count == 0 ? 0 : (double) latencyTotal.sum() / count;
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    @Override
+    public long getWrapUnwrapTime() {
+        return wrapUnwrapTime.sum();
+    }
+}
@@ -0,0 +1,38 @@
+package automail;
+
+import java.util.Map;
+
+/**
+ * What SimulationMetrics shows over JMX while a run is in progress
+ */
+public interface SimulationMetricsMXBean {
+
+    /** The simulation time of the last tick */
+    int getTick();
+
+    /** The number of robots in each state */
+    Map<String, Long> getRobotsByState();
+
+    /** The number of items waiting in the mail pool */
+    int getPoolDepth();
+
+    long getArrived();
+
+    long getDelivered();
+
+    /** Deliveries per tick over the run so far */
+    double getDeliveriesPerTick();
+
+    /** Deliveries in the last tick, or since the last tick the clock stopped at */
+    int getDeliveriesLastTick();
+
+    /** Time from arrival to delivery, counted in buckets of powers of two */
+    Map<String, Long> getLatencyHistogram();
+
+    double getMeanLatency();
+
+    long getMaxLatency();
+
+    /** Robot ticks spent wrapping or unwrapping fragile items so far */
+    long getWrapUnwrapTime();
+}
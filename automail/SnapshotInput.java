@@ -0,0 +1,77 @@
+package automail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reads a snapshot written by SnapshotOutput into a fresh simulation
+ */
+public class SnapshotInput extends DataInputStream {
+
+    private final Robot[] robots;
+    private final Map<Integer, MailItem> mail = new HashMap<Integer, MailItem>();
+
+    /**
+     * @param robots the fleet of the simulation being restored
+     */
+    public SnapshotInput(InputStream in, Robot[] robots) {
+        super(in);
+        this.robots = robots;
+    }
+
+    /**
+     * @return the item, the same object every time it is read, or null
+     */
+    public MailItem readMail() throws IOException {
+        int index = readInt();
+        if (index < 0) {
+            return null;
+        }
+        if (!readBoolean()) {
+            MailItem mailItem = mail.get(index);
+            if (mailItem == null) throw new IOException("Snapshot refers to mail " + index + " before writing it");
+            return mailItem;
+        }
+        int dest_floor = readInt();
+        int arrival_time = readInt();
+        int weight = readInt();
+        boolean fragile = readBoolean();
+        MailItem mailItem = new MailItem(index, dest_floor, arrival_time, weight, fragile);
+        mail.put(index, mailItem);
+        return mailItem;
+    }
+
+    /**
+     * @return the random source written by writeRandom, at the same point in its sequence
+     */
+    public Random readRandom() throws IOException {
+        byte[] bytes = new byte[readInt()];
+        readFully(bytes);
+        ObjectInputStream object = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (Random) object.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Snapshot holds an unknown random source", e);
+        } finally {
+            object.close();
+        }
+    }
+
+    /**
+     * @return the robot of the simulation being restored, or null
+     */
+    public Robot readRobot() throws IOException {
+        int index = readInt();
+        if (index < 0) {
+            return null;
+        }
+        if (index >= robots.length) throw new IOException("Snapshot refers to robot " + index + " of " + robots.length);
+        return robots[index];
+    }
+}
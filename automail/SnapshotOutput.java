@@ -0,0 +1,63 @@
+package automail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Writes a snapshot. Mail items are written in full the first time and by index after
+ * that, robots by index, so SnapshotInput can give back the same objects.
+ */
+public class SnapshotOutput extends DataOutputStream {
+
+    private final BitSet written = new BitSet();
+
+    public SnapshotOutput(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * @param mailItem the item, or null
+     */
+    public void writeMail(MailItem mailItem) throws IOException {
+        if (mailItem == null) {
+            writeInt(-1);
+            return;
+        }
+        int index = mailItem.getIndex();
+        writeInt(index);
+        if (written.get(index)) {
+            writeBoolean(false);
+            return;
+        }
+        written.set(index);
+        writeBoolean(true);
+        writeInt(mailItem.getDestFloor());
+        writeInt(mailItem.getArrivalTime());
+        writeInt(mailItem.getWeight());
+        writeBoolean(mailItem.getFragile());
+    }
+
+    /**
+     * Writes a random source as it stands, so it goes on to give the same numbers
+     */
+    public void writeRandom(Random random) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        ObjectOutputStream object = new ObjectOutputStream(bytes);
+        object.writeObject(random);
+        object.close();
+        writeInt(bytes.size());
+        bytes.writeTo(this);
+    }
+
+    /**
+     * @param robot a robot of the simulation being saved, or null
+     */
+    public void writeRobot(Robot robot) throws IOException {
+        writeInt(robot == null ? -1 : robot.getIndex());
+    }
+}
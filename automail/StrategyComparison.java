@@ -0,0 +1,96 @@
+package automail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs the configuration in automail.properties once for each IMailPool strategy on the
+ * same seeds, and reports their throughput, final delivery time, score and tail latency side by side.
+ * Usage: StrategyComparison firstSeed lastSeed strategyClass [strategyClass...]
+ */
+public class StrategyComparison {
+
+    /** How one strategy did over every seed */
+    public static class Result {
+        public final String strategy;
+        public final List<SeedSweep.Run> runs;
+        public final int failed;
+        /** Items delivered per tick */
+        public final SeedSweep.Summary throughput;
+        public final SeedSweep.Summary finalTime;
+        public final SeedSweep.Summary score;
+        public final SeedSweep.Summary p99Latency;
+
+        Result(String strategy, List<SeedSweep.Run> runs) {
+            this.strategy = strategy;
+            this.runs = runs;
+            List<SeedSweep.Run> completed = new ArrayList<SeedSweep.Run>();
+            for (SeedSweep.Run run : runs) {
+                if (run.failure == null) completed.add(run);
+            }
+            this.failed = runs.size() - completed.size();
+            int n = completed.size();
+            double[] throughputs = new double[n];
+            double[] finalTimes = new double[n];
+            double[] scores = new double[n];
+            double[] p99Latencies = new double[n];
+            for (int i = 0; i < n; i++) {
+                SeedSweep.Run run = completed.get(i);
+                throughputs[i] = run.finalTime == 0 ? 0 : (double) run.delivered / run.finalTime;
+                finalTimes[i] = run.finalTime;
+                scores[i] = run.score;
+                p99Latencies[i] = run.p99Latency;
+            }
+            this.throughput = new SeedSweep.Summary("Items/tick", throughputs);
+            this.finalTime = new SeedSweep.Summary("Final delivery time", finalTimes);
+            this.score = new SeedSweep.Summary("Score", scores);
+            this.p99Latency = new SeedSweep.Summary("99th percentile latency", p99Latencies);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 3) {
+            System.out.println("Usage: StrategyComparison firstSeed lastSeed strategyClass [strategyClass...]");
+            return;
+        }
+        int firstSeed = Integer.parseInt(args[0]);
+        int lastSeed = Integer.parseInt(args[1]);
+        List<String> strategies = new ArrayList<String>();
+        for (int i = 2; i < args.length; i++) strategies.add(args[i]);
+        SimulationConfig config = SimulationConfig.fromProperties(SimulationConfig.loadProperties("automail.properties"));
+
+        List<Result> results = compare(config, strategies, firstSeed, lastSeed, Runtime.getRuntime().availableProcessors());
+
+        System.out.printf("Seeds %d to %d%n", firstSeed, lastSeed);
+        System.out.printf("%-36s %6s %20s %24s %30s %22s%n", "Strategy", "Failed", "Items/tick", "Final delivery time",
+                "Score", "p99 latency");
+        for (Result result : results) {
+            System.out.printf("%-36s %6d %9.4f +/-%7.4f %12.2f +/-%8.2f %16.2f +/-%10.2f %10.2f +/-%7.2f%n", result.strategy,
+                    result.failed, result.throughput.mean, result.throughput.ci95, result.finalTime.mean, result.finalTime.ci95,
+                    result.score.mean, result.score.ci95, result.p99Latency.mean, result.p99Latency.ci95);
+        }
+        for (Result result : results) {
+            for (SeedSweep.Run run : result.runs) {
+                if (run.failure != null) System.out.printf("%s seed %d failed: %s%n", result.strategy, run.seed, run.failure);
+            }
+        }
+    }
+
+    /**
+     * Sweeps the seeds once per strategy, each strategy seeing exactly the same mail
+     * @param strategies class names of IMailPool implementations
+     * @return the results in the order of strategies
+     */
+    public static List<Result> compare(SimulationConfig config, List<String> strategies, int firstSeed, int lastSeed,
+            int parallelism) throws InterruptedException, ExecutionException {
+        List<Result> results = new ArrayList<Result>();
+        for (String strategy : strategies) {
+            SimulationConfig strategyConfig = config.copy();
+            strategyConfig.mailPool = strategy;
+            results.add(new Result(strategy, SeedSweep.sweep(strategyConfig, firstSeed, lastSeed, parallelism)));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,95 @@
+package automail;
+
+import java.io.IOException;
+
+import strategies.IMailPool;
+
+/**
+ * Generates mail as it arrives instead of all of it up front.
+ * Arrival times are drawn as sorted uniform values, one at a time, so only the next item
+ * to arrive is ever held and a run of any size starts straight away in constant memory.
+ * Arrival times, floors, weights and fragility have the same distributions as MailGenerator,
+ * and a given seed always gives the same mail, but not the same mail as MailGenerator
+ * gives for that seed.
+ */
+public class StreamingMailGenerator extends MailGenerator {
+
+    private final boolean generateFragile;
+    /** How many items are still to be drawn */
+    private int remaining;
+    /** Log of the largest of the remaining uniform values still to be drawn */
+    private double logLargest;
+    /** The next item to arrive, null once all of the mail has been delivered to the pool */
+    private MailItem next;
+
+    /**
+     * @param context the simulation the mail is generated for
+     * @param mailPool where mail items go on arrival
+     * @param generateFragile whether any of the mail may be fragile
+     */
+    public StreamingMailGenerator(SimulationContext context, IMailPool mailPool, boolean generateFragile) {
+        super(context, mailPool);
+        this.generateFragile = generateFragile;
+        this.remaining = MAIL_TO_CREATE;
+        this.logLargest = 0;
+        this.next = generateNext();
+    }
+
+    /**
+     * Nothing to do, mail is generated as it arrives
+     */
+    @Override
+    public void generateAllMail(boolean generateFragile) {
+    }
+
+    /**
+     * Draws the next arrival time in ascending order.
+     * The largest of k uniform values is distributed as U^(1/k), so the remaining values are
+     * walked from the largest down and reflected, which keeps them uniform but ascending.
+     */
+    private MailItem generateNext() {
+        if (remaining == 0) {
+            return null;
+        }
+        logLargest += Math.log(1.0 - random.nextDouble()) / remaining;
+        remaining--;
+        int last = context.clock.LAST_DELIVERY_TIME;
+        int arrival_time = 1 + (int) ((1.0 - Math.exp(logLargest)) * last);
+        if (arrival_time > last) arrival_time = last;
+        int dest_floor = generateDestinationFloor();
+        int weight = generateWeight();
+        boolean isFragile = generateFragile && generateFragile();
+        return new MailItem(context.mailIds.next(), dest_floor, arrival_time, weight, isFragile);
+    }
+
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        super.save(out);
+        out.writeInt(remaining);
+        out.writeDouble(logLargest);
+        out.writeMail(next);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        super.restore(in);
+        remaining = in.readInt();
+        logLargest = in.readDouble();
+        next = in.readMail();
+    }
+
+    @Override
+    public int nextArrivalTime(int now) {
+        return next == null ? Integer.MAX_VALUE : Math.max(next.getArrivalTime(), now);
+    }
+
+    @Override
+    public void step() {
+        int now = context.clock.Time();
+        while (next != null && next.getArrivalTime() <= now) {
+            context.log.arrival(now, next);
+            mailPool.addToPool(next);
+            next = generateNext();
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package automail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import strategies.FleetStatistics;
+
+/**
+ * Runs a matrix of scenarios and seeds across worker JVMs, so a sweep too big for one
+ * heap is spread over processes that share nothing.
+ * <p>
+ * The coordinator splits the matrix into one work unit per scenario and seed and listens
+ * on a loopback port. Workers, SweepWorker processes started by the coordinator or by
+ * hand on the same machine, connect and pull one unit at a time, run it headless and send
+ * back a compact result record. Once the queue is empty an idle worker steals a unit still
+ * running on another worker, so one slow worker does not hold up the sweep. The first
+ * result wins and the worker still running the unit is told to cancel it. When a worker
+ * dies its unit goes back to the front of the queue, and a process the coordinator started
+ * is replaced. A unit that has killed MAX_ATTEMPTS workers is reported as failed. Every
+ * worker still connected is told when the sweep is done.
+ * <p>
+ * Each scenario is a properties file read over automail.properties, with no scenario
+ * files automail.properties is the only scenario. Worker_Options in automail.properties
+ * sets the JVM options of the workers the coordinator starts, as in -Xmx2g.
+ * Usage: SweepCoordinator firstSeed lastSeed [workers] [scenario.properties ...]
+ */
+public class SweepCoordinator {
+
+    /** Sent by a worker when it connects */
+    static final int MAGIC = 0x414d5357;
+    static final byte UNIT = 1;
+    static final byte DONE = 2;
+    /** Tells a worker the result of the unit it is running is no longer needed */
+    static final byte CANCEL = 3;
+
+    /** How many workers a unit may kill before it is given up */
+    private static final int MAX_ATTEMPTS = 3;
+    /** How long failure messages sent by workers can be */
+    private static final int MAX_FAILURE_LENGTH = 2000;
+
+    /** The exception a failed run is reported with when it failed in a worker */
+    public static class WorkerFailure extends Exception {
+        WorkerFailure(String message) {
+            super(message);
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    /** One run of the matrix */
+    private static final class Unit {
+        final int id;
+        final int scenario;
+        final int seed;
+        final Properties settings;
+        /** Where to tell each worker running it that it is no longer needed */
+        final List<DataOutputStream> runners = new ArrayList<DataOutputStream>();
+        /** How many workers died running it */
+        int attempts;
+        SeedSweep.Run result;
+
+        Unit(int id, int scenario, int seed, Properties settings) {
+            this.id = id;
+            this.scenario = scenario;
+            this.seed = seed;
+            this.settings = settings;
+        }
+    }
+
+    private final List<Unit> units = new ArrayList<Unit>();
+    private final ArrayDeque<Unit> queue = new ArrayDeque<Unit>();
+    /** Units handed out without a result yet, oldest first */
+    private final List<Unit> running = new ArrayList<Unit>();
+    private int remaining;
+    /** Every worker connected now */
+    private final List<DataOutputStream> connections = new ArrayList<DataOutputStream>();
+    private int stolen;
+    private int retried;
+
+    private final List<Process> processes = new ArrayList<Process>();
+    private List<String> workerCommand;
+    private int liveProcesses;
+    private int restartsLeft;
+    private int restarts;
+
+    /**
+     * @param scenarios the settings of each scenario, including any defaults
+     */
+    public SweepCoordinator(List<Properties> scenarios, int firstSeed, int lastSeed) {
+        for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+            for (int seed = firstSeed; seed <= lastSeed; seed++) {
+                Properties settings = new Properties();
+                settings.putAll(scenarios.get(scenario));
+                settings.setProperty("Seed", String.valueOf(seed));
+                Unit unit = new Unit(units.size(), scenario, seed, settings);
+                units.add(unit);
+                queue.add(unit);
+            }
+        }
+        remaining = units.size();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: SweepCoordinator firstSeed lastSeed [workers] [scenario.properties ...]");
+            return;
+        }
+        int firstSeed = Integer.parseInt(args[0]);
+        int lastSeed = Integer.parseInt(args[1]);
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Properties automailProperties = SimulationConfig.loadProperties("automail.properties");
+        List<Properties> scenarios = new ArrayList<Properties>();
+        List<String> names = new ArrayList<String>();
+        for (int i = 3; i < args.length; i++) {
+            Properties scenario = new Properties();
+            scenario.putAll(automailProperties);
+            FileReader inStream = new FileReader(args[i]);
+            try {
+                scenario.load(inStream);
+            } finally {
+                inStream.close();
+            }
+            scenarios.add(scenario);
+            names.add(args[i]);
+        }
+        if (scenarios.isEmpty()) {
+            scenarios.add(automailProperties);
+            names.add("automail.properties");
+        }
+        String options = automailProperties.getProperty("Worker_Options", "").trim();
+
+        SweepCoordinator coordinator = new SweepCoordinator(scenarios, firstSeed, lastSeed);
+        long start = System.nanoTime();
+        List<SeedSweep.Run> runs = coordinator.sweep(workers, options.isEmpty() ? new String[0] : options.split("\\s+"));
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("Seeds %d to %d, %d scenarios, %d runs, %d workers, %d restarted, %d stolen, %d retried, %.2f s%n",
+                firstSeed, lastSeed, scenarios.size(), runs.size(), workers, coordinator.restarts,
+                coordinator.stolen, coordinator.retried, elapsed / 1e9);
+        int perScenario = lastSeed - firstSeed + 1;
+        for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+            List<SeedSweep.Run> scenarioRuns = runs.subList(scenario * perScenario, (scenario + 1) * perScenario);
+            int failed = 0;
+            for (SeedSweep.Run run : scenarioRuns) {
+                if (run.failure != null) failed++;
+            }
+            System.out.printf("%s: %d runs, %d failed%n", names.get(scenario), scenarioRuns.size(), failed);
+            for (SeedSweep.Run run : scenarioRuns) {
+                if (run.failure != null) System.out.printf("Seed %d failed: %s%n", run.seed, run.failure);
+            }
+            for (SeedSweep.Summary summary : SeedSweep.summarise(scenarioRuns)) {
+                System.out.println(summary);
+            }
+        }
+    }
+
+    /**
+     * Listens on a loopback port, starts the workers and waits for every unit's result
+     * @param workers how many worker processes to start, with none the coordinator waits
+     * for workers started by hand
+     * @param options JVM options of the workers it starts
+     * @return the results in scenario then seed order
+     */
+    public List<SeedSweep.Run> sweep(int workers, String[] options) throws IOException, InterruptedException {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            System.out.printf("Listening on %s:%d%n", server.getInetAddress().getHostAddress(), server.getLocalPort());
+            Thread acceptor = daemon("automail-sweep-accept", new Runnable() {
+                public void run() {
+                    accept(server, sockets);
+                }
+            });
+            acceptor.start();
+            synchronized (this) {
+                workerCommand = new ArrayList<String>();
+                workerCommand.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+                for (String option : options) workerCommand.add(option);
+                workerCommand.add("-cp");
+                workerCommand.add(System.getProperty("java.class.path"));
+                workerCommand.add(SweepWorker.class.getName());
+                workerCommand.add(server.getInetAddress().getHostAddress());
+                workerCommand.add(String.valueOf(server.getLocalPort()));
+                restartsLeft = workers * MAX_ATTEMPTS;
+                for (int i = 0; i < Math.min(workers, units.size()); i++) launch();
+                while (remaining > 0) {
+                    if (workers > 0 && liveProcesses == 0 && connections.isEmpty()) {
+                        giveUp("No workers left");
+                        break;
+                    }
+                    wait();
+                }
+            }
+            List<SeedSweep.Run> runs = new ArrayList<SeedSweep.Run>(units.size());
+            for (Unit unit : units) runs.add(unit.result);
+            return runs;
+        } finally {
+            server.close();
+            List<DataOutputStream> connected;
+            synchronized (this) {
+                connected = new ArrayList<DataOutputStream>(connections);
+            }
+            for (DataOutputStream out : connected) send(out, DONE, 0);
+            synchronized (sockets) {
+                for (Socket socket : sockets) socket.close();
+            }
+            synchronized (this) {
+                restartsLeft = 0;
+                for (Process process : processes) process.destroy();
+            }
+        }
+    }
+
+    private void accept(ServerSocket server, final List<Socket> sockets) {
+        while (!server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            synchronized (sockets) {
+                sockets.add(socket);
+            }
+            daemon("automail-sweep-worker", new Runnable() {
+                public void run() {
+                    serve(socket);
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Hands units to one worker until there are none left or the worker goes away
+     */
+    private void serve(Socket socket) {
+        Unit unit = null;
+        DataOutputStream out = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC) return;
+            synchronized (this) {
+                connections.add(out);
+            }
+            while ((unit = take(out)) != null) {
+                synchronized (out) {
+                    out.writeByte(UNIT);
+                    out.writeInt(unit.id);
+                    out.writeInt(unit.settings.size());
+                    for (String name : unit.settings.stringPropertyNames()) {
+                        out.writeUTF(name);
+                        out.writeUTF(unit.settings.getProperty(name));
+                    }
+                    out.flush();
+                }
+                if (in.readInt() != unit.id) throw new IOException("Worker sent the result of another unit");
+                SeedSweep.Run result = readResult(in);
+                for (DataOutputStream other : finish(unit, result, out)) send(other, CANCEL, unit.id);
+                unit = null;
+            }
+            send(out, DONE, 0);
+        } catch (IOException e) {
+            // The worker died or was stopped, its unit is retried below
+        } finally {
+            synchronized (this) {
+                connections.remove(out);
+                if (unit != null) release(unit, out);
+                notifyAll();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+    }
+
+    /**
+     * @return the next unit for a worker, a running unit to steal once the queue is
+     * empty, or null when every unit has a result
+     */
+    private synchronized Unit take(DataOutputStream out) throws IOException {
+        while (remaining > 0) {
+            Unit unit = queue.poll();
+            if (unit == null) {
+                for (Unit candidate : running) {
+                    if (candidate.runners.size() == 1) {
+                        unit = candidate;
+                        stolen++;
+                        break;
+                    }
+                }
+            }
+            if (unit != null) {
+                if (unit.runners.isEmpty()) running.add(unit);
+                unit.runners.add(out);
+                return unit;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for work", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the first result of a unit, a stolen unit's second result is dropped
+     * @return the workers still running the unit, which no longer need to
+     */
+    private synchronized List<DataOutputStream> finish(Unit unit, SeedSweep.Run result, DataOutputStream out) {
+        unit.runners.remove(out);
+        if (unit.result != null) return new ArrayList<DataOutputStream>();
+        unit.result = result;
+        running.remove(unit);
+        remaining--;
+        notifyAll();
+        return new ArrayList<DataOutputStream>(unit.runners);
+    }
+
+    /** Puts back the unit of a worker that went away, unless another worker is still running it */
+    private void release(Unit unit, DataOutputStream out) {
+        unit.runners.remove(out);
+        if (unit.result != null || !unit.runners.isEmpty()) return;
+        running.remove(unit);
+        if (++unit.attempts >= MAX_ATTEMPTS) {
+            fail(unit, "Worker died running seed " + unit.seed + " " + unit.attempts + " times");
+        } else {
+            retried++;
+            queue.addFirst(unit);
+        }
+    }
+
+    private void giveUp(String reason) {
+        for (Unit unit : units) {
+            if (unit.result == null) fail(unit, reason);
+        }
+        queue.clear();
+        running.clear();
+    }
+
+    private void fail(Unit unit, String reason) {
+        unit.result = new SeedSweep.Run(unit.seed, 0, 0, 0, 0, 0, null, new WorkerFailure(reason));
+        remaining--;
+    }
+
+    /** Starts a worker process, and a replacement when it exits while there is work left */
+    private void launch() throws IOException {
+        final Process process = new ProcessBuilder(workerCommand).inheritIO().start();
+        processes.add(process);
+        liveProcesses++;
+        daemon("automail-sweep-process", new Runnable() {
+            public void run() {
+                while (true) {
+                    try {
+                        process.waitFor();
+                        break;
+                    } catch (InterruptedException e) {
+                        // Keep waiting, the process is what ends this thread
+                    }
+                }
+                synchronized (SweepCoordinator.this) {
+                    liveProcesses--;
+                    processes.remove(process);
+                    if (remaining > 0 && restartsLeft > 0) {
+                        restartsLeft--;
+                        restarts++;
+                        try {
+                            launch();
+                        } catch (IOException e) {
+                            System.err.println("Could not restart a worker: " + e);
+                        }
+                    }
+                    SweepCoordinator.this.notifyAll();
+                }
+            }
+        }).start();
+    }
+
+    /** Sends a worker a message, if it is still there to hear it */
+    private static void send(DataOutputStream out, byte message, int id) {
+        try {
+            synchronized (out) {
+                out.writeByte(message);
+                if (message == CANCEL) out.writeInt(id);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The worker has gone, which is all the message would have done
+        }
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Writes the result record of a run, after its unit id
+     */
+    static void writeResult(DataOutputStream out, SeedSweep.Run run) throws IOException {
+        out.writeInt(run.seed);
+        out.writeInt(run.finalTime);
+        out.writeInt(run.delivered);
+        out.writeDouble(run.score);
+        out.writeDouble(run.meanLatency);
+        out.writeInt(run.p99Latency);
+        FleetStatistics statistics = run.statistics;
+        out.writeBoolean(statistics != null);
+        if (statistics != null) {
+            out.writeInt(statistics.normalPackageDelivered);
+            out.writeInt(statistics.cautionPackageDelivered);
+            out.writeInt(statistics.normalPackageDeliveredWeight);
+            out.writeInt(statistics.cautionPackageDeliveredWeight);
+            out.writeInt(statistics.wrapUnwrapTime);
+        }
+        out.writeBoolean(run.failure != null);
+        if (run.failure != null) {
+            String failure = run.failure.toString();
+            out.writeUTF(failure.length() > MAX_FAILURE_LENGTH ? failure.substring(0, MAX_FAILURE_LENGTH) : failure);
+        }
+    }
+
+    static SeedSweep.Run readResult(DataInputStream in) throws IOException {
+        int seed = in.readInt();
+        int finalTime = in.readInt();
+        int delivered = in.readInt();
+        double score = in.readDouble();
+        double meanLatency = in.readDouble();
+        int p99Latency = in.readInt();
+        FleetStatistics statistics = null;
+        if (in.readBoolean()) {
+            statistics = new FleetStatistics(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        }
+        Throwable failure = in.readBoolean() ? new WorkerFailure(in.readUTF()) : null;
+        return new SeedSweep.Run(seed, finalTime, delivered, score, meanLatency, p99Latency, statistics, failure);
+    }
+}
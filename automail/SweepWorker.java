@@ -0,0 +1,166 @@
+package automail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs work units for a SweepCoordinator, one at a time, until it has none left.
+ * Each unit is a whole run with logging, tracing and checkpoints off, and only its
+ * result record goes back, so the worker's heap holds one run at a time.
+ * <p>
+ * A reader thread takes the coordinator's messages while a unit runs. A cancelled unit is
+ * stopped at the end of its current tick and reported as failed, which the coordinator
+ * drops. When the coordinator says it is done, or goes away, the worker stops its unit
+ * and exits quietly.
+ * Usage: SweepWorker host port
+ */
+public class SweepWorker {
+
+    /** One unit to run, or END once there are no more */
+    private static final class Unit {
+        final int id;
+        final Properties settings;
+
+        Unit(int id, Properties settings) {
+            this.id = id;
+            this.settings = settings;
+        }
+    }
+
+    private static final Unit END = new Unit(-1, null);
+
+    private final BlockingQueue<Unit> units = new LinkedBlockingQueue<Unit>();
+    /** The unit running now and its run, or -1 and null between units */
+    private int runningId = -1;
+    private SimulationContext running;
+    /** The last unit cancelled, it may be cancelled before it starts */
+    private int cancelledId = -1;
+    private boolean done;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: SweepWorker host port");
+            return;
+        }
+        Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(SweepCoordinator.MAGIC);
+            out.flush();
+            final SweepWorker worker = new SweepWorker();
+            Thread reader = new Thread(new Runnable() {
+                public void run() {
+                    worker.read(in);
+                }
+            }, "automail-sweep-reader");
+            reader.setDaemon(true);
+            reader.start();
+            worker.work(out);
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Runs units until there are no more, sending each result back
+     */
+    private void work(DataOutputStream out) throws InterruptedException {
+        Unit unit;
+        while ((unit = units.take()) != END) {
+            SeedSweep.Run result = run(unit);
+            try {
+                out.writeInt(unit.id);
+                SweepCoordinator.writeResult(out, result);
+                out.flush();
+            } catch (IOException e) {
+                // The coordinator has finished with the sweep
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes the coordinator's messages until it says it is done or goes away
+     */
+    private void read(DataInputStream in) {
+        try {
+            while (true) {
+                byte message = in.readByte();
+                if (message == SweepCoordinator.UNIT) {
+                    int id = in.readInt();
+                    Properties settings = new Properties();
+                    int n = in.readInt();
+                    for (int i = 0; i < n; i++) {
+                        settings.setProperty(in.readUTF(), in.readUTF());
+                    }
+                    units.add(new Unit(id, settings));
+                } else if (message == SweepCoordinator.CANCEL) {
+                    cancel(in.readInt());
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // The coordinator went away, which ends the sweep as DONE would
+        }
+        finish();
+    }
+
+    private synchronized void cancel(int id) {
+        cancelledId = id;
+        if (runningId == id) {
+            running.stop(new SweepCoordinator.WorkerFailure("Cancelled, another worker finished it first"));
+        }
+    }
+
+    private synchronized void finish() {
+        done = true;
+        if (running != null) {
+            running.stop(new SweepCoordinator.WorkerFailure("The sweep finished first"));
+        }
+        units.add(END);
+    }
+
+    /** @return false if the unit was cancelled or the sweep finished before it started */
+    private synchronized boolean start(int id, SimulationContext context) {
+        if (done || cancelledId == id) return false;
+        runningId = id;
+        running = context;
+        return true;
+    }
+
+    private synchronized void end() {
+        runningId = -1;
+        running = null;
+    }
+
+    /**
+     * @return the result, or a failed run if the settings could not be run at all
+     */
+    private SeedSweep.Run run(Unit unit) {
+        int seed = Integer.parseInt(unit.settings.getProperty("Seed").trim());
+        try {
+            SimulationConfig config = SimulationConfig.fromProperties(unit.settings).headless();
+            SimulationContext context = new SimulationContext(config);
+            if (!start(unit.id, context)) {
+                return new SeedSweep.Run(seed, 0, 0, 0, 0, 0, null,
+                        new SweepCoordinator.WorkerFailure("Cancelled before it started"));
+            }
+            try {
+                return new SeedSweep.Run(seed, Simulation.run(context));
+            } finally {
+                end();
+            }
+        } catch (RuntimeException | OutOfMemoryError e) {
+            return new SeedSweep.Run(seed, 0, 0, 0, 0, 0, null, e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package automail;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads back a trace written by TraceRecorder, mapping it a region at a time so traces
+ * far bigger than memory can be read. replay rebuilds the delivery times, score and
+ * latencies of the run without simulating it again.
+ * Usage: TraceReader traceFile
+ */
+public class TraceReader implements Closeable {
+
+    /** One record, reused from call to call of next */
+    public static class Record {
+        public int tick;
+        public byte type;
+        public byte from;
+        public byte to;
+        public byte flags;
+        public int robot;
+        public int mail;
+        public int floor;
+        /** The weight, or for deliveries the number delivered so far */
+        public int value;
+
+        public Robot.RobotState fromState() {
+            return Robot.RobotState.values()[from];
+        }
+
+        public Robot.RobotState toState() {
+            return Robot.RobotState.values()[to];
+        }
+
+        public boolean isFragile() {
+            return (flags & TraceRecorder.FRAGILE) != 0;
+        }
+    }
+
+    /** What a replay rebuilt */
+    public static class Replay {
+        public final int delivered;
+        /** The clock when the run ended as Simulation reports it, the tick after the last delivery */
+        public final int finalTime;
+        public final double totalScore;
+        /** Latency of the deliveries, overall, by floor and by fragility */
+        public final ScoreCard scores;
+        /** Delivery time of each item by mail index, -1 for items never delivered */
+        public final int[] deliveryTime;
+
+        Replay(int delivered, int finalTime, ScoreCard scores, int[] deliveryTime) {
+            this.delivered = delivered;
+            this.finalTime = finalTime;
+            this.totalScore = scores.getTotalScore();
+            this.scores = scores;
+            this.deliveryTime = deliveryTime;
+        }
+    }
+
+    private static final int REGION_RECORDS = 1 << 16;
+
+    private final FileChannel channel;
+    private final long count;
+    private long read;
+    private MappedByteBuffer region;
+
+    public TraceReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceRecorder.HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != TraceRecorder.MAGIC || header.getShort() != TraceRecorder.VERSION
+                || header.getShort() != TraceRecorder.RECORD_SIZE) {
+            channel.close();
+            throw new IOException(file + " is not an automail trace");
+        }
+        count = header.getLong();
+        read = 0;
+    }
+
+    /**
+     * @return the number of records in the trace
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Reads the next record into record
+     * @return false at the end of the trace
+     */
+    public boolean next(Record record) throws IOException {
+        if (read == count) return false;
+        if (region == null || !region.hasRemaining()) {
+            long records = Math.min(REGION_RECORDS, count - read);
+            region = channel.map(FileChannel.MapMode.READ_ONLY,
+                    TraceRecorder.HEADER_SIZE + read * TraceRecorder.RECORD_SIZE, records * TraceRecorder.RECORD_SIZE);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        record.tick = region.getInt();
+        record.type = region.get();
+        record.from = region.get();
+        record.to = region.get();
+        record.flags = region.get();
+        record.robot = region.getInt();
+        record.mail = region.getInt();
+        record.floor = region.getInt();
+        record.value = region.getInt();
+        read++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Rebuilds the deliveries of a traced run and scores them as the simulation did
+     * @param sink if not null, given every delivered item in the order it was delivered
+     * @param clock if not null, advanced to each delivery's time before the sink is called
+     */
+    public static Replay replay(File file, IMailDelivery sink, Clock clock) throws IOException {
+        int[] arrival = new int[1024];
+        int[] floor = new int[1024];
+        int[] weight = new int[1024];
+        boolean[] fragile = new boolean[1024];
+        int[] deliveryTime = new int[1024];
+        Arrays.fill(deliveryTime, -1);
+        int items = 0;
+        int delivered = 0;
+        int finalTime = 0;
+        ScoreCard scores = new ScoreCard(1);
+        Record record = new Record();
+        TraceReader reader = new TraceReader(file);
+        try {
+            while (reader.next(record)) {
+                if (record.type != TraceRecorder.ARRIVAL && record.type != TraceRecorder.DELIVERY) continue;
+                int mail = record.mail;
+                if (mail >= arrival.length) {
+                    int n = Math.max(mail + 1, arrival.length * 2);
+                    arrival = Arrays.copyOf(arrival, n);
+                    floor = Arrays.copyOf(floor, n);
+                    weight = Arrays.copyOf(weight, n);
+                    fragile = Arrays.copyOf(fragile, n);
+                    int old = deliveryTime.length;
+                    deliveryTime = Arrays.copyOf(deliveryTime, n);
+                    Arrays.fill(deliveryTime, old, n, -1);
+                }
+                if (record.type == TraceRecorder.ARRIVAL) {
+                    arrival[mail] = record.tick;
+                    floor[mail] = record.floor;
+                    weight[mail] = record.value;
+                    fragile[mail] = record.isFragile();
+                    items = Math.max(items, mail + 1);
+                    continue;
+                }
+                MailItem mailItem = new MailItem(mail, floor[mail], arrival[mail], weight[mail], fragile[mail]);
+                deliveryTime[mail] = record.tick;
+                scores.record(record.tick, mailItem);
+                finalTime = record.tick + 1;
+                delivered++;
+                if (sink != null) {
+                    if (clock != null) clock.Advance(record.tick - clock.Time());
+                    sink.deliver(mailItem);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new Replay(delivered, finalTime, scores, Arrays.copyOf(deliveryTime, items));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TraceReader traceFile");
+            return;
+        }
+        Replay replay = replay(new File(args[0]), null, null);
+        System.out.printf("Delivered: %d%n", replay.delivered);
+        System.out.printf("Final Delivery time: %d%n", replay.finalTime);
+        System.out.printf("Final Score: %.2f%n", replay.totalScore);
+        EventLog log = new EventLog(EventLog.Level.SUMMARY);
+        replay.scores.report(log);
+        log.close();
+    }
+}
@@ -0,0 +1,145 @@
+package automail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a run as fixed width binary records in an append only, memory mapped file.
+ * Recording is a handful of puts into mapped memory on the simulation thread, the OS writes
+ * the pages back. Read the file back with TraceReader.
+ *
+ * The file is a 16 byte header, the magic number, version, record size and record count,
+ * followed by records of
+ * <pre>
+ * int  tick
+ * byte type, byte from state, byte to state, byte flags
+ * int  robot index, or -1
+ * int  mail index, or -1
+ * int  floor
+ * int  weight, or for deliveries the number delivered so far
+ * </pre>
+ */
+public class TraceRecorder implements IEventListener {
+
+    public static final int MAGIC = 0x414d5452; // AMTR
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 24;
+
+    public static final byte ARRIVAL = 0;
+    public static final byte REPOOL = 1;
+    public static final byte STATE_CHANGE = 2;
+    public static final byte DISPATCH = 3;
+    public static final byte DELIVERY = 4;
+
+    /** Flag set when the item is fragile */
+    public static final byte FRAGILE = 1;
+    /** Flag set when the robot has an item in its tube */
+    public static final byte TUBE = 2;
+
+    /** How much of the file is mapped at a time */
+    private static final int REGION_SIZE = RECORD_SIZE * (1 << 16);
+
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    /** File offset of the start of the mapped region */
+    private long regionStart;
+    private long count;
+
+    /**
+     * Creates or truncates the trace file
+     */
+    public TraceRecorder(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        regionStart = 0;
+        map();
+        region.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(0);
+    }
+
+    private void map() throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_SIZE);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void arrival(int time, MailItem mailItem) {
+        item(ARRIVAL, time, -1, mailItem, mailItem.getWeight());
+    }
+
+    @Override
+    public void repool(int time, MailItem mailItem) {
+        item(REPOOL, time, -1, mailItem, mailItem.getWeight());
+    }
+
+    @Override
+    public void stateChange(int time, int robot, int floor, boolean tube, Robot.RobotState from, Robot.RobotState to) {
+        put(time, STATE_CHANGE, from.ordinal(), to.ordinal(), tubeFlag(tube), robot, -1, floor, 0);
+    }
+
+    @Override
+    public void dispatch(int time, int robot, int floor, boolean tube, MailItem mailItem) {
+        put(time, DISPATCH, 0, 0, tubeFlag(tube) | fragileFlag(mailItem), robot, mailItem.getIndex(),
+                mailItem.getDestFloor(), mailItem.getWeight());
+    }
+
+    @Override
+    public void delivery(int time, int count, MailItem mailItem) {
+        item(DELIVERY, time, -1, mailItem, count);
+    }
+
+    private void item(byte type, int time, int robot, MailItem mailItem, int value) {
+        put(time, type, 0, 0, fragileFlag(mailItem), robot, mailItem.getIndex(), mailItem.getDestFloor(), value);
+    }
+
+    private static int tubeFlag(boolean tube) {
+        return tube ? TUBE : 0;
+    }
+
+    private static int fragileFlag(MailItem mailItem) {
+        return mailItem.getFragile() ? FRAGILE : 0;
+    }
+
+    private void put(int time, byte type, int from, int to, int flags, int robot, int mail, int floor, int value) {
+        if (region.remaining() < RECORD_SIZE) {
+            try {
+                regionStart += region.position();
+                map();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to extend the trace file", e);
+            }
+        }
+        region.putInt(time).put(type).put((byte) from).put((byte) to).put((byte) flags)
+            .putInt(robot).putInt(mail).putInt(floor).putInt(value);
+        count++;
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Writes the record count into the header, cuts the file to the records written and closes it
+     */
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+        region.force();
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(8, count);
+        header.force();
+        try {
+            channel.truncate(HEADER_SIZE + count * RECORD_SIZE);
+        } catch (IOException e) {
+            // Some platforms will not shrink a mapped file, the header count still marks the end
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,170 @@
+package automail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import exceptions.SimulationStalledException;
+import strategies.IMailPool;
+
+/**
+ * Ends a run that can no longer finish, rather than leaving the tick loop to spin. A run
+ * loops until every item is delivered, so one item lost on the way, as a NormalRobot
+ * given fragile mail drops it, would keep it going forever.
+ * <p>
+ * The stall window only counts ticks with work outstanding, mail in the pool or a robot
+ * that is not waiting empty. A delivery starts it again, and so does every tick the run is
+ * quiet waiting for mail, so a sparse workload or the event engine skipping to the next
+ * arrival never fills it. A run with no deliveries for the whole window is stalled or
+ * going round in circles. A quiet run with nothing left to arrive has lost its
+ * undelivered mail and nothing will ever happen again, so it is ended at once. The tick
+ * and wall clock budgets end a run that goes on too long however it is doing. An ended
+ * run fails with a SimulationStalledException holding a diagnostic of the pool and fleet,
+ * and a snapshot is written to resume from if Stall_Snapshot is set.
+ */
+class Watchdog {
+
+    /** How many robots the diagnostic describes one by one */
+    private static final int ROBOTS_DESCRIBED = 20;
+    /** How many ticks apart the wall clock is read */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private final int window;
+    private final int maxTicks;
+    private final long deadline;
+    private int lastDelivered = -1;
+    /** When the last delivery was seen, or the run was last quiet */
+    private int lastProgress;
+    private boolean wasQuiet;
+    private int ticks;
+
+    /**
+     * @param config the stall window and budgets, the wall clock budget starts now
+     */
+    Watchdog(SimulationConfig config) {
+        this.window = config.stallTicks == 0 ? 10 * config.floors + 1000 : config.stallTicks;
+        this.maxTicks = config.maxTicks;
+        this.deadline = config.maxSeconds > 0 ? System.nanoTime() + (long) (config.maxSeconds * 1e9) : 0;
+    }
+
+    /**
+     * Checks the run at the end of a tick, stopping it if it has stalled or run out of budget
+     */
+    void tick(SimulationContext context) {
+        int now = context.clock.Time();
+        int delivered = context.getDelivered();
+        boolean quiet = isQuiet(context);
+        if (delivered != lastDelivered || quiet) {
+            lastDelivered = delivered;
+            lastProgress = now;
+        } else if (wasQuiet) {
+            /** The work came in this tick, however many quiet ticks the clock skipped */
+            lastProgress = now - 1;
+        } else if (window > 0 && now - lastProgress >= window) {
+            IMailPool pool = context.getMailPool();
+            int busy = 0;
+            for (Robot robot : context.getAutomail().robots) {
+                if (robot.idleSteps() != Integer.MAX_VALUE) busy++;
+            }
+            stop(context, String.format("No deliveries for %d ticks with %d items in the pool and %d robots busy",
+                    now - lastProgress, pool.size(), busy));
+        }
+        wasQuiet = quiet;
+        if (quiet && delivered < context.getMailToCreate()
+                && context.getMailSource().nextArrivalTime(now) == Integer.MAX_VALUE) {
+            stop(context, String.format("%d items can never be delivered, the pool is empty and every robot waits",
+                    context.getMailToCreate() - delivered));
+        }
+        if (maxTicks > 0 && now >= maxTicks) {
+            stop(context, "Reached Max_Ticks of " + maxTicks);
+        }
+        if (deadline != 0 && ++ticks % CLOCK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+            stop(context, "Ran out of Max_Seconds after " + now + " ticks");
+        }
+    }
+
+    /**
+     * @return whether the pool is empty and every robot waits empty, with nothing to do until mail arrives
+     */
+    private static boolean isQuiet(SimulationContext context) {
+        if (context.getMailPool().size() > 0) return false;
+        for (Robot robot : context.getAutomail().robots) {
+            if (robot.idleSteps() != Integer.MAX_VALUE || !robot.isEmpty() || robot.getSpecialArms() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void stop(SimulationContext context, String reason) {
+        if (context.getFailure() != null || context.getDelivered() == context.getMailToCreate()) return;
+        String diagnostic = diagnose(context);
+        String snapshot = context.config.stallSnapshot;
+        if (snapshot != null) {
+            diagnostic += snapshot(context, new File(snapshot));
+        }
+        context.log.summary("%s", diagnostic);
+        context.stop(new SimulationStalledException(reason, diagnostic));
+    }
+
+    /**
+     * @return the state of the run, a line for the pool and mail and a line for each robot
+     */
+    static String diagnose(SimulationContext context) {
+        int now = context.clock.Time();
+        StringBuilder out = new StringBuilder();
+        int next = context.getMailSource().nextArrivalTime(now);
+        out.append(String.format("T: %d | %d of %d items delivered, %d in the pool, next arrival %s%n", now,
+                context.getDelivered(), context.getMailToCreate(), context.getMailPool().size(),
+                next == Integer.MAX_VALUE ? "none" : "at T: " + next));
+        Robot[] robots = context.getAutomail().robots;
+        int[] states = new int[Robot.RobotState.values().length];
+        for (Robot robot : robots) states[robot.current_state.ordinal()]++;
+        out.append("Robots:");
+        for (Robot.RobotState state : Robot.RobotState.values()) {
+            if (states[state.ordinal()] > 0) out.append(' ').append(state).append(' ').append(states[state.ordinal()]);
+        }
+        out.append(String.format("%n"));
+        int described = 0;
+        for (Robot robot : robots) {
+            /** Robots holding mail first, they are where lost mail would be */
+            if (robot.isEmpty() && robot.getSpecialArms() == null) continue;
+            if (described++ == ROBOTS_DESCRIBED) break;
+            out.append(describe(robot));
+        }
+        for (Robot robot : robots) {
+            if (!robot.isEmpty() || robot.getSpecialArms() != null) continue;
+            if (described++ >= ROBOTS_DESCRIBED) break;
+            out.append(describe(robot));
+        }
+        if (robots.length > ROBOTS_DESCRIBED) {
+            out.append(String.format("and %d more robots%n", robots.length - ROBOTS_DESCRIBED));
+        }
+        return out.toString();
+    }
+
+    private static String describe(Robot robot) {
+        return String.format("%s %s at floor %d, heading to %d, hand %s, tube %s, special arms %s%n", robot.getId(),
+                robot.current_state, robot.getCurrentFloor(), robot.destination_floor, item(robot.getArms()),
+                item(robot.getTube()), item(robot.getSpecialArms()));
+    }
+
+    private static String item(MailItem mailItem) {
+        return mailItem == null ? "empty" : mailItem.getId();
+    }
+
+    private static String snapshot(SimulationContext context, File file) {
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                Checkpoint.save(context, out);
+            } finally {
+                out.close();
+            }
+            return String.format("Snapshot written to %s%n", file);
+        } catch (IOException e) {
+            return String.format("Could not write a snapshot to %s: %s%n", file, e.getMessage());
+        }
+    }
+}
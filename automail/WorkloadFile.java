@@ -0,0 +1,267 @@
+package automail;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads mail arrival records, one at a time, from a CSV or binary workload file through a
+ * fixed size buffer, so files of any size can be read without loading them.
+ *
+ * CSV files have one record per line: arrival time, destination floor, weight and whether
+ * the item is fragile, as true/false or 1/0. Blank lines, lines starting with # and a
+ * header line before the first record are skipped.
+ *
+ * Binary files start with a 16 byte header, the magic number, version, record size and record
+ * count, followed by little endian records of arrival time, floor, weight and flags, four ints each.
+ *
+ * Records must be in order of arrival time, and go to a floor of the building.
+ * Usage: WorkloadFile csvFile binaryFile, to convert a CSV workload to the binary format
+ */
+public class WorkloadFile implements Closeable {
+
+    public static final int MAGIC = 0x414d574c; // AMWL
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+    /** Flag set when the item is fragile */
+    public static final int FRAGILE = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean binary;
+    private final long size;
+    /** The number of floors destinations must be within, 0 to check only the lowest floor */
+    private final int floors;
+    private byte[] line = new byte[128];
+    private long lineNumber;
+    /** The CSV field being parsed, within line */
+    private int position;
+    private int end;
+    private long read;
+
+    /** The record read by the last call to next */
+    public int arrival;
+    public int floor;
+    public int weight;
+    public boolean fragile;
+
+    /**
+     * Opens a workload for any building, only checking destinations are not below the lowest floor
+     */
+    public WorkloadFile(File file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * Opens a workload, telling CSV from binary by the magic number.
+     * A CSV file is read through once here to count and check its records.
+     * @param floors the number of floors in the building, 0 for any number
+     */
+    public WorkloadFile(File file, int floors) throws IOException {
+        this.file = file;
+        this.floors = floors;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            header.flip();
+            binary = header.remaining() == HEADER_SIZE && header.getInt() == MAGIC;
+            if (binary) {
+                if (header.getShort() != VERSION || header.getShort() != RECORD_SIZE) {
+                    throw new IOException(file + " is a workload of an unknown version");
+                }
+                size = header.getLong();
+            } else {
+                rewind();
+                long count = 0;
+                while (next()) count++;
+                size = count;
+            }
+            rewind();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of records in the workload
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Goes back to the first record
+     */
+    public void rewind() throws IOException {
+        channel.position(binary ? HEADER_SIZE : 0);
+        buffer.clear().flip();
+        lineNumber = 0;
+        read = 0;
+        arrival = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Reads the next record into arrival, floor, weight and fragile
+     * @return false at the end of the workload
+     */
+    public boolean next() throws IOException {
+        int previous = arrival;
+        if (binary) {
+            if (read == size) return false;
+            if (buffer.remaining() < RECORD_SIZE && !fill(RECORD_SIZE)) {
+                throw new IOException(file + " ends after " + read + " of " + size + " records");
+            }
+            arrival = buffer.getInt();
+            floor = buffer.getInt();
+            weight = buffer.getInt();
+            fragile = (buffer.getInt() & FRAGILE) != 0;
+        } else if (!nextLine()) {
+            return false;
+        }
+        if (arrival < previous) {
+            throw new IOException(where() + "arrival " + arrival + " is before the previous record's " + previous);
+        }
+        if (floor < Building.LOWEST_FLOOR || floors > 0 && floor > Building.LOWEST_FLOOR + floors - 1) {
+            throw new IOException(where() + "destination floor " + floor + " is not in the building"
+                    + (floors > 0 ? ", floors " + Building.LOWEST_FLOOR + " to " + (Building.LOWEST_FLOOR + floors - 1) : ""));
+        }
+        read++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** Moves what is left to the front of the buffer and reads until there is at least need bytes */
+    private boolean fill(int need) throws IOException {
+        buffer.compact();
+        while (buffer.position() < need && channel.read(buffer) >= 0) { }
+        buffer.flip();
+        return buffer.remaining() >= need;
+    }
+
+    private int readByte() throws IOException {
+        if (!buffer.hasRemaining() && !fill(1)) return -1;
+        return buffer.get();
+    }
+
+    /** Reads CSV lines until one holds a record */
+    private boolean nextLine() throws IOException {
+        while (true) {
+            int length = 0;
+            int c;
+            while ((c = readByte()) != -1 && c != '\n') {
+                if (length == line.length) line = Arrays.copyOf(line, length * 2);
+                line[length++] = (byte) c;
+            }
+            if (c == -1 && length == 0) return false;
+            lineNumber++;
+            int start = 0;
+            while (start < length && Character.isWhitespace(line[start])) start++;
+            if (start == length || line[start] == '#') continue;
+            if (read == 0 && Character.isLetter(line[start])) continue; // header
+            parseRecord(start, length);
+            return true;
+        }
+    }
+
+    private void parseRecord(int start, int length) throws IOException {
+        position = start;
+        end = length;
+        arrival = parseInt();
+        floor = parseInt();
+        weight = parseInt();
+        skipSpaces();
+        if (position == end) throw new IOException(where() + "expected 4 fields");
+        byte first = line[position];
+        fragile = first == 't' || first == 'T' || first == '1';
+        if (!fragile && first != 'f' && first != 'F' && first != '0') {
+            throw new IOException(where() + "fragile should be true, false, 1 or 0");
+        }
+    }
+
+    private int parseInt() throws IOException {
+        skipSpaces();
+        boolean negative = position < end && line[position] == '-';
+        if (negative) position++;
+        int digits = 0;
+        long value = 0;
+        while (position < end && line[position] >= '0' && line[position] <= '9') {
+            value = value * 10 + line[position++] - '0';
+            if (value > Integer.MAX_VALUE) throw new IOException(where() + "number out of range");
+            digits++;
+        }
+        if (digits == 0) throw new IOException(where() + "expected a number");
+        skipSpaces();
+        if (position < end && line[position] == ',') {
+            position++;
+        } else {
+            throw new IOException(where() + "expected 4 fields");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private void skipSpaces() {
+        while (position < end && Character.isWhitespace(line[position])) position++;
+    }
+
+    private String where() {
+        return file + (binary ? " record " + (read + 1) : " line " + lineNumber) + ": ";
+    }
+
+    /**
+     * Writes a workload out in the binary format
+     * @param in the workload to copy, read from its first record
+     * @param out the binary file, created or overwritten
+     */
+    public static void convert(WorkloadFile in, File out) throws IOException {
+        in.rewind();
+        FileChannel channel = FileChannel.open(out.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(in.size());
+            while (in.next()) {
+                if (buffer.remaining() < RECORD_SIZE) drain(buffer, channel);
+                buffer.putInt(in.arrival).putInt(in.floor).putInt(in.weight).putInt(in.fragile ? FRAGILE : 0);
+            }
+            drain(buffer, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: WorkloadFile csvFile binaryFile");
+            return;
+        }
+        WorkloadFile in = new WorkloadFile(new File(args[0]));
+        try {
+            convert(in, new File(args[1]));
+            System.out.printf("%d records written to %s%n", in.size(), args[1]);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package automail;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import strategies.IMailPool;
+
+/**
+ * Replays a recorded workload instead of generating mail. Records are read from the
+ * WorkloadFile as their arrival time comes round, so only one is held at a time.
+ */
+public class WorkloadSource implements IMailSource, ICheckpointable, Closeable {
+
+    private final SimulationContext context;
+    private final IMailPool mailPool;
+    private final WorkloadFile workload;
+    private final int total;
+    private final boolean fragileEnabled;
+    /** Whether workload holds a record that has not arrived yet */
+    private boolean pending;
+    /** How many records have gone into the pool */
+    private int arrived;
+
+    /**
+     * @param context the simulation the mail arrives in
+     * @param mailPool where mail items go on arrival
+     * @param file the CSV or binary workload
+     */
+    public WorkloadSource(SimulationContext context, IMailPool mailPool, File file) throws IOException {
+        this.context = context;
+        this.mailPool = mailPool;
+        this.workload = new WorkloadFile(file, context.config.floors);
+        if (workload.size() > Integer.MAX_VALUE) {
+            workload.close();
+            throw new IOException(file + " holds more mail than one run can deliver");
+        }
+        this.total = (int) workload.size();
+        this.fragileEnabled = context.config.fragileEnabled;
+        this.pending = workload.next();
+    }
+
+    @Override
+    public int totalMail() {
+        return total;
+    }
+
+    @Override
+    public int nextArrivalTime(int now) {
+        return pending ? Math.max(workload.arrival, now) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Puts every record that has arrived by now into the pool. Fragile marks are
+     * dropped when fragile mail is not enabled, as the generator would not make any.
+     */
+    @Override
+    public void step() {
+        int now = context.clock.Time();
+        try {
+            while (pending && workload.arrival <= now) {
+                MailItem mailItem = new MailItem(context.mailIds.next(), workload.floor, workload.arrival,
+                        workload.weight, fragileEnabled && workload.fragile);
+                context.log.arrival(now, mailItem);
+                mailPool.addToPool(mailItem);
+                arrived++;
+                pending = workload.next();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void save(SnapshotOutput out) throws IOException {
+        out.writeInt(total);
+        out.writeInt(arrived);
+    }
+
+    /**
+     * Reads the workload again from the start up to the first record still to arrive
+     */
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        if (in.readInt() != total) {
+            throw new IOException("Snapshot was taken with a different workload");
+        }
+        arrived = in.readInt();
+        workload.rewind();
+        pending = workload.next();
+        for (int i = 0; i < arrived && pending; i++) {
+            pending = workload.next();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        workload.close();
+    }
+}
@@ -0,0 +1,20 @@
+package exceptions;
+
+/**
+ * Thrown when a run stops making progress, or runs past its tick or time budget, and is ended rather than left to spin
+ */
+public class SimulationStalledException extends Exception {
+    private final String diagnostic;
+
+    public SimulationStalledException(String message, String diagnostic){
+        super(message);
+        this.diagnostic = diagnostic;
+    }
+
+    /**
+     * @return the state of the pool and fleet when the run was ended, over several lines
+     */
+    public String getDiagnostic() {
+        return diagnostic;
+    }
+}
@@ -0,0 +1,29 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the simulator benchmarks with the GC profiler, so every result also shows
+ * bytes allocated per operation.
+ * The benchmarks are kept under jmh/, apart from the simulator sources, so the simulator
+ * compiles without JMH. Compiling them needs the simulator classes and jmh-core on the
+ * classpath and jmh-generator-annprocess as an annotation processor.
+ * Usage: BenchmarkMain [regexp], for example BenchmarkMain MailPool
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "benchmarks\\..*")
+                .addProfiler(GCProfiler.class)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
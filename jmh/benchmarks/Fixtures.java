@@ -0,0 +1,127 @@
+package benchmarks;
+
+import java.util.Random;
+
+import automail.EventLog;
+import automail.IMailDelivery;
+import automail.MailItem;
+import automail.Robot;
+import automail.SimulationConfig;
+import automail.SimulationContext;
+import strategies.IMailPool;
+
+/**
+ * Shared set up for the benchmarks: configurations, synthetic mail and do-nothing collaborators
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return a configuration with logging off and weights that never exceed what a robot can carry
+     */
+    static SimulationConfig config(int floors, int robots, boolean fragile) {
+        SimulationConfig config = new SimulationConfig();
+        config.floors = floors;
+        config.robots = robots;
+        config.mailToCreate = 1000;
+        config.mailMaxWeight = Robot.INDIVIDUAL_MAX_WEIGHT;
+        config.lastDeliveryTime = 1000;
+        config.cautionEnabled = fragile;
+        config.fragileEnabled = fragile;
+        config.statisticsEnabled = true;
+        config.logLevel = EventLog.Level.OFF;
+        config.seed = 42;
+        return config;
+    }
+
+    static SimulationContext context(SimulationConfig config) {
+        return new SimulationContext(config, new EventLog(EventLog.Level.OFF));
+    }
+
+    /**
+     * Makes mail with uniform destinations and the given share of fragile items
+     */
+    static final class MailSource {
+        private final SimulationContext context;
+        private final Random random = new Random(42);
+        private final double fragileRatio;
+
+        MailSource(SimulationContext context, double fragileRatio) {
+            this.context = context;
+            this.fragileRatio = fragileRatio;
+        }
+
+        MailItem next() {
+            int floor = 1 + random.nextInt(context.building.FLOORS);
+            int weight = 200 + random.nextInt(Robot.INDIVIDUAL_MAX_WEIGHT - 200);
+            boolean fragile = random.nextDouble() < fragileRatio;
+            return new MailItem(context.mailIds.next(), floor, context.clock.Time(), weight, fragile);
+        }
+    }
+
+    /** Counts deliveries and otherwise ignores them */
+    static final class CountingDelivery implements IMailDelivery {
+        long delivered;
+
+        public void deliver(MailItem mailItem) {
+            delivered++;
+        }
+    }
+
+    /** A pool that drops everything, for measuring the generator on its own */
+    static final class NullPool implements IMailPool {
+        public void addToPool(MailItem mailItem) {
+        }
+
+        public void addToPool(int handle) {
+        }
+
+        public void step() {
+        }
+
+        public void registerWaiting(Robot robot) {
+        }
+
+        public int size() {
+            return 0;
+        }
+
+        public boolean isIdle() {
+            return true;
+        }
+    }
+
+    /**
+     * A robot that takes whatever the pool hands it and forgets it straight away,
+     * so it is always empty and can be loaded again
+     */
+    static final class SinkRobot extends Robot {
+        long taken;
+
+        SinkRobot(SimulationContext context, IMailPool mailPool) {
+            super(new CountingDelivery(), mailPool, context);
+        }
+
+        public void step() {
+        }
+
+        protected void setRoute() {
+        }
+
+        @Override
+        public void addToHand(MailItem mailItem) {
+            taken++;
+        }
+
+        @Override
+        public void addToTube(MailItem mailItem) {
+            taken++;
+        }
+
+        public void addToSpecialHand(MailItem mailItem) {
+            taken++;
+        }
+    }
+}
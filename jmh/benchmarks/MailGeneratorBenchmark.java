@@ -0,0 +1,42 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import automail.MailGenerator;
+import automail.SimulationConfig;
+
+/**
+ * MailGenerator.generateAllMail for a whole run's worth of mail
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MailGeneratorBenchmark {
+
+    @Param({"1000", "100000"})
+    public int mailToCreate;
+
+    @Param({"10", "100"})
+    public int floors;
+
+    @Param({"false", "true"})
+    public boolean fragile;
+
+    @Benchmark
+    public MailGenerator generateAllMail() {
+        SimulationConfig config = Fixtures.config(floors, 1, fragile);
+        config.mailToCreate = mailToCreate;
+        config.lastDeliveryTime = mailToCreate;
+        MailGenerator generator = new MailGenerator(Fixtures.context(config), new Fixtures.NullPool());
+        generator.generateAllMail(fragile);
+        return generator;
+    }
+}
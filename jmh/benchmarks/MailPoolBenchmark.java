@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import automail.SimulationContext;
+import exceptions.BreakingFragileItemException;
+import exceptions.ItemTooHeavyException;
+import strategies.MailPool;
+
+/**
+ * MailPool.addToPool and loading a waiting robot, with the pool held at a fixed depth.
+ * Each operation adds one item, and whenever the pool is deeper than poolDepth a robot
+ * is registered and loaded so the depth stays put.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MailPoolBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int poolDepth;
+
+    @Param({"10", "100"})
+    public int floors;
+
+    /** Any fragile mail puts the pool in caution mode */
+    @Param({"0", "0.25"})
+    public double fragileRatio;
+
+    private MailPool pool;
+    private Fixtures.MailSource mail;
+    private Fixtures.SinkRobot robot;
+    private long added;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimulationContext context = Fixtures.context(Fixtures.config(floors, 1, fragileRatio > 0));
+        pool = new MailPool(context);
+        mail = new Fixtures.MailSource(context, fragileRatio);
+        robot = new Fixtures.SinkRobot(context, pool);
+        for (added = 0; added < poolDepth; added++) {
+            pool.addToPool(mail.next());
+        }
+    }
+
+    @Benchmark
+    public long addAndLoad() throws ItemTooHeavyException, BreakingFragileItemException {
+        pool.addToPool(mail.next());
+        added++;
+        if (added - robot.taken > poolDepth) {
+            pool.registerWaiting(robot);
+            pool.step();
+        }
+        return robot.taken;
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import automail.CautionRobot;
+import automail.Robot;
+import automail.SimulationContext;
+import exceptions.BreakingFragileItemException;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import strategies.Automail;
+import strategies.MailPool;
+
+/**
+ * One tick of a busy fleet: the pool loads waiting robots and every robot steps.
+ * The pool is topped up with synthetic mail so the robots never run dry.
+ * With fragile mail the fleet is made of caution robots, which is also where
+ * CautionRobot.waitForUnwrap is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RobotBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int robots;
+
+    @Param({"10", "50"})
+    public int floors;
+
+    @Param({"0", "0.25"})
+    public double fragileRatio;
+
+    private SimulationContext context;
+    private Automail automail;
+    private Fixtures.MailSource mail;
+    private Fixtures.CountingDelivery delivery;
+    private long added;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ExcessiveDeliveryException, ItemTooHeavyException, BreakingFragileItemException {
+        context = Fixtures.context(Fixtures.config(floors, robots, fragileRatio > 0));
+        delivery = new Fixtures.CountingDelivery();
+        automail = new Automail(new MailPool(context), delivery, robots, context);
+        mail = new Fixtures.MailSource(context, fragileRatio);
+        /** Spread the fleet out over the building before measuring */
+        for (int i = 0; i < 4 * floors; i++) {
+            tick();
+        }
+    }
+
+    @Benchmark
+    public long tick() throws ExcessiveDeliveryException, ItemTooHeavyException, BreakingFragileItemException {
+        while (added - delivery.delivered < 4L * robots) {
+            automail.mailPool.addToPool(mail.next());
+            added++;
+        }
+        automail.mailPool.step();
+        for (Robot robot : automail.robots) {
+            robot.step();
+        }
+        context.clock.Tick();
+        return delivery.delivered;
+    }
+
+    @Benchmark
+    public int waitForUnwrap() {
+        int waiting = 0;
+        for (Robot robot : automail.robots) {
+            if (robot instanceof CautionRobot && ((CautionRobot) robot).waitForUnwrap()) {
+                waiting++;
+            }
+        }
+        return waiting;
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import automail.Simulation;
+import automail.SimulationConfig;
+import automail.SimulationContext;
+
+/**
+ * Whole runs through Simulation.run with logging off. Besides runs per second, JMH reports
+ * the simulated ticks and deliveries per second through the auxiliary counters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SimulationBenchmark {
+
+    @Param({"4", "40"})
+    public int robots;
+
+    @Param({"10", "50"})
+    public int floors;
+
+    @Param({"2000", "20000"})
+    public int mailToCreate;
+
+    @Param({"false", "true"})
+    public boolean fragile;
+
+    @Param({"false", "true"})
+    public boolean eventDriven;
+
+    /** Simulated work done, as rates per second of benchmark time */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Progress {
+        public long ticks;
+        public long deliveries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ticks = 0;
+            deliveries = 0;
+        }
+    }
+
+    private SimulationConfig config;
+    private int seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        config = Fixtures.config(floors, robots, fragile);
+        config.mailToCreate = mailToCreate;
+        config.lastDeliveryTime = mailToCreate;
+        config.eventDriven = eventDriven;
+    }
+
+    @Benchmark
+    public SimulationContext run(Progress progress) {
+        /** Vary the seed so the JIT cannot settle on one run */
+        SimulationConfig runConfig = config.copy();
+        runConfig.seed = seed++ % 16;
+        SimulationContext context = Simulation.run(runConfig);
+        progress.ticks += context.getFinalTime();
+        progress.deliveries += context.getDelivered();
+        return context;
+    }
+}
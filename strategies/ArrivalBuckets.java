@@ -0,0 +1,52 @@
+package strategies;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+import automail.MailItem;
+import automail.SnapshotInput;
+import automail.SnapshotOutput;
+
+/**
+ * Holds pooled mail in a single queue, handing it out in the order it went in
+ */
+class ArrivalBuckets implements PoolBuckets {
+
+	private final ArrayDeque<MailItem> queue = new ArrayDeque<MailItem>();
+
+	@Override
+	public void add(MailItem mailItem) {
+		queue.addLast(mailItem);
+	}
+
+	@Override
+	public MailItem peek() {
+		return queue.peekFirst();
+	}
+
+	@Override
+	public MailItem poll() {
+		return queue.pollFirst();
+	}
+
+	@Override
+	public void save(SnapshotOutput out) throws IOException {
+		out.writeInt(queue.size());
+		for (MailItem mailItem : queue) out.writeMail(mailItem);
+	}
+
+	@Override
+	public void restore(SnapshotInput in) throws IOException {
+		for (int n = in.readInt(); n > 0; n--) add(in.readMail());
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+}
@@ -0,0 +1,14 @@
+package strategies;
+
+import automail.SimulationContext;
+
+/**
+ * Loads robots first come first served, whatever floor the mail is for.
+ * A baseline to compare the floor ordered MailPool against.
+ */
+public class ArrivalOrderMailPool extends MailPool {
+
+	public ArrivalOrderMailPool(SimulationContext context) {
+		super(context, new ArrivalBuckets());
+	}
+}
@@ -0,0 +1,236 @@
+package strategies;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+import automail.Building;
+import automail.ICheckpointable;
+import automail.MailItem;
+import automail.MailStore;
+import automail.Robot;
+import automail.SimulationContext;
+import automail.SnapshotInput;
+import automail.SnapshotOutput;
+import exceptions.BreakingFragileItemException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Chooses each load by cost rather than handing out whatever is at the head of the pool.
+ * Every item first in line for its floor is a candidate. The load is built around the
+ * candidate with the lowest cost: the ticks its trip takes, less how long it has waited.
+ * Short trips are preferred, but no item waits forever. The robot's other slots are
+ * filled with the candidates that add the least to that trip, so destinations cluster.
+ * Caution robots take fragile candidates in the special arm.
+ *
+ * Mail is indexed by floor, so building a load looks at the occupied floors, not the
+ * whole pool. Waiting robots are all in the mailroom and interchangeable, so they are
+ * loaded in the order they arrived.
+ */
+public class DispatchMailPool implements IMailPool, ICheckpointable {
+
+	/** Ticks of trip a tick of waiting is worth */
+	private static final int AGE_WEIGHT = 1;
+
+	private final SimulationContext context;
+	private final MailStore store;
+	private final boolean CAUTION_ENABLED;
+	private final boolean FRAGILE_ENABLED;
+	private final FloorIndex normal;
+	/** Fragile mail, kept apart only when caution robots can carry it */
+	private final FloorIndex fragile;
+	private final ArrayDeque<Robot> robots;
+
+	/** Mail in arrival order for each floor, with the occupied floors marked */
+	private static final class FloorIndex {
+		ArrayDeque<MailItem>[] floors;
+		final BitSet occupied = new BitSet();
+		int size;
+
+		@SuppressWarnings("unchecked")
+		FloorIndex(int n) {
+			floors = (ArrayDeque<MailItem>[]) new ArrayDeque<?>[n];
+		}
+
+		@SuppressWarnings("unchecked")
+		void add(MailItem mailItem) {
+			int floor = mailItem.getDestFloor() - Building.LOWEST_FLOOR;
+			if (floor >= floors.length) {
+				ArrayDeque<MailItem>[] grown = (ArrayDeque<MailItem>[]) new ArrayDeque<?>[Math.max(floor + 1, floors.length * 2)];
+				System.arraycopy(floors, 0, grown, 0, floors.length);
+				floors = grown;
+			}
+			if (floors[floor] == null) floors[floor] = new ArrayDeque<MailItem>();
+			floors[floor].addLast(mailItem);
+			occupied.set(floor);
+			size++;
+		}
+
+		MailItem head(int floor) {
+			return floors[floor].peekFirst();
+		}
+
+		void remove(int floor) {
+			floors[floor].pollFirst();
+			if (floors[floor].isEmpty()) occupied.clear(floor);
+			size--;
+		}
+
+		void save(SnapshotOutput out) throws IOException {
+			out.writeInt(size);
+			for (int floor = occupied.nextSetBit(0); floor >= 0; floor = occupied.nextSetBit(floor + 1)) {
+				for (MailItem mailItem : floors[floor]) out.writeMail(mailItem);
+			}
+		}
+
+		void restore(SnapshotInput in) throws IOException {
+			for (int n = in.readInt(); n > 0; n--) add(in.readMail());
+		}
+	}
+
+	public DispatchMailPool(SimulationContext context) {
+		this.context = context;
+		this.store = context.getMailStore();
+		CAUTION_ENABLED = context.config.cautionEnabled;
+		FRAGILE_ENABLED = context.config.fragileEnabled;
+		normal = new FloorIndex(Math.max(context.building.FLOORS, 1));
+		fragile = new FloorIndex(Math.max(context.building.FLOORS, 1));
+		robots = new ArrayDeque<Robot>(Math.max(context.config.robots, 1));
+	}
+
+	@Override
+	public void addToPool(MailItem mailItem) {
+		if (mailItem.getFragile() && CAUTION_ENABLED && FRAGILE_ENABLED) {
+			fragile.add(mailItem);
+		} else {
+			normal.add(mailItem);
+		}
+	}
+
+	@Override
+	public void addToPool(int handle) {
+		if (store == null) {
+			throw new IllegalStateException("Mail handles need a columnar mail store");
+		}
+		addToPool(store.view(handle));
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException, BreakingFragileItemException {
+		/** A robot only leaves the queue once it has been given mail */
+		while (!robots.isEmpty() && size() > 0) {
+			loadRobot(robots.peekFirst());
+			robots.pollFirst();
+		}
+	}
+
+	private void loadRobot(Robot robot) throws ItemTooHeavyException, BreakingFragileItemException {
+		assert(robot.isEmpty());
+		int now = context.clock.Time();
+		boolean special = CAUTION_ENABLED && FRAGILE_ENABLED;
+		/** The anchor is the cheapest candidate, its floor sets the trip */
+		int anchorNormal = cheapest(normal, now);
+		int anchorFragile = special ? cheapest(fragile, now) : -1;
+		int top;
+		if (anchorFragile >= 0 && (anchorNormal < 0
+				|| cost(fragile, anchorFragile, now) < cost(normal, anchorNormal, now))) {
+			robot.addToSpecialHand(take(fragile, anchorFragile));
+			top = anchorFragile;
+		} else {
+			robot.addToHand(take(normal, anchorNormal));
+			top = anchorNormal;
+		}
+		/** Then the mail closest to that trip in each slot left */
+		if (robot.getArms() == null) {
+			int floor = closest(normal, top);
+			if (floor >= 0) {
+				robot.addToHand(take(normal, floor));
+				top = Math.max(top, floor);
+			}
+		}
+		if (robot.getArms() != null && robot.getTube() == null) {
+			int floor = closest(normal, top);
+			if (floor >= 0) {
+				robot.addToTube(take(normal, floor));
+				top = Math.max(top, floor);
+			}
+		}
+		if (special && robot.getSpecialArms() == null) {
+			int floor = closest(fragile, top);
+			if (floor >= 0) {
+				robot.addToSpecialHand(take(fragile, floor));
+			}
+		}
+		robot.dispatch(); // send the robot off if it has any items to deliver
+	}
+
+	/**
+	 * @return the floor index of the cheapest candidate, or -1 if there is none
+	 */
+	private static int cheapest(FloorIndex index, int now) {
+		int best = -1;
+		long bestCost = Long.MAX_VALUE;
+		for (int floor = index.occupied.nextSetBit(0); floor >= 0; floor = index.occupied.nextSetBit(floor + 1)) {
+			long cost = cost(index, floor, now);
+			if (cost < bestCost) {
+				best = floor;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	/** Ticks of the round trip to a floor index, less the wait of the item first in line there */
+	private static long cost(FloorIndex index, int floor, int now) {
+		return 2L * floor - (long) AGE_WEIGHT * (now - index.head(floor).getArrivalTime());
+	}
+
+	/**
+	 * Finds the occupied floor nearest a trip reaching floor index top. Floors above it
+	 * count double, as the robot has to go there and back.
+	 * @return the floor index, or -1 if there is no mail
+	 */
+	private static int closest(FloorIndex index, int top) {
+		int below = index.occupied.previousSetBit(Math.min(top, index.floors.length - 1));
+		int above = index.occupied.nextSetBit(top + 1);
+		if (below < 0) return above;
+		if (above < 0) return below;
+		return 2 * (above - top) < top - below ? above : below;
+	}
+
+	private static MailItem take(FloorIndex index, int floor) {
+		MailItem mailItem = index.head(floor);
+		index.remove(floor);
+		return mailItem;
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) { // assumes won't be there already
+		robots.addLast(robot);
+	}
+
+	@Override
+	public int size() {
+		return normal.size + fragile.size;
+	}
+
+	@Override
+	public void save(SnapshotOutput out) throws IOException {
+		normal.save(out);
+		fragile.save(out);
+		out.writeInt(robots.size());
+		for (Robot robot : robots) out.writeRobot(robot);
+	}
+
+	@Override
+	public void restore(SnapshotInput in) throws IOException {
+		normal.restore(in);
+		fragile.restore(in);
+		for (int n = in.readInt(); n > 0; n--) robots.addLast(in.readRobot());
+	}
+
+	@Override
+	public boolean isIdle() {
+		return robots.isEmpty() || size() == 0;
+	}
+}
@@ -0,0 +1,50 @@
+package strategies;
+
+import automail.Robot;
+
+/**
+ * Totals of the delivery counters kept by each robot in a fleet
+ */
+public class FleetStatistics {
+
+    public final int normalPackageDelivered;
+    public final int cautionPackageDelivered;
+    public final int normalPackageDeliveredWeight;
+    public final int cautionPackageDeliveredWeight;
+    public final int wrapUnwrapTime;
+
+    /**
+     * @param robots the fleet to total up
+     */
+    public FleetStatistics(Robot[] robots) {
+        int normal = 0;
+        int caution = 0;
+        int normalWeight = 0;
+        int cautionWeight = 0;
+        int wrapUnwrap = 0;
+        for (Robot robot : robots) {
+            normal += robot.getNormalPackageDelivered();
+            caution += robot.getCautionPackageDelivered();
+            normalWeight += robot.getNormalPackageDeliveredWeight();
+            cautionWeight += robot.getCautionPackageDeliveredWeight();
+            wrapUnwrap += robot.getWrapUnwrapTime();
+        }
+        normalPackageDelivered = normal;
+        cautionPackageDelivered = caution;
+        normalPackageDeliveredWeight = normalWeight;
+        cautionPackageDeliveredWeight = cautionWeight;
+        wrapUnwrapTime = wrapUnwrap;
+    }
+
+    /**
+     * Totals already taken, as when they are sent from another process
+     */
+    public FleetStatistics(int normalPackageDelivered, int cautionPackageDelivered, int normalPackageDeliveredWeight,
+            int cautionPackageDeliveredWeight, int wrapUnwrapTime) {
+        this.normalPackageDelivered = normalPackageDelivered;
+        this.cautionPackageDelivered = cautionPackageDelivered;
+        this.normalPackageDeliveredWeight = normalPackageDeliveredWeight;
+        this.cautionPackageDeliveredWeight = cautionPackageDeliveredWeight;
+        this.wrapUnwrapTime = wrapUnwrapTime;
+    }
+}
@@ -0,0 +1,91 @@
+package strategies;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+import automail.Building;
+import automail.MailItem;
+import automail.SnapshotInput;
+import automail.SnapshotOutput;
+
+/**
+ * Holds pooled mail in one FIFO bucket per destination floor.
+ * Items come out lowest floor first and in arrival order within a floor,
+ * which is the same order the old sorted list produced, but adding is O(1)
+ * and taking the head is amortised O(1).
+ */
+class FloorBuckets implements PoolBuckets {
+
+	private ArrayDeque<MailItem>[] buckets;
+	/** Lowest floor index that may hold mail, every bucket below it is empty */
+	private int lowest;
+	private int size;
+
+	FloorBuckets(int floors) {
+		buckets = newBuckets(Math.max(floors, 1));
+		lowest = buckets.length;
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayDeque<MailItem>[] newBuckets(int n) {
+		return (ArrayDeque<MailItem>[]) new ArrayDeque<?>[n];
+	}
+
+	@Override
+	public void add(MailItem mailItem) {
+		int floor = mailItem.getDestFloor() - Building.LOWEST_FLOOR;
+		if (floor >= buckets.length) {
+			ArrayDeque<MailItem>[] grown = newBuckets(Math.max(floor + 1, buckets.length * 2));
+			System.arraycopy(buckets, 0, grown, 0, buckets.length);
+			if (lowest == buckets.length) lowest = grown.length;
+			buckets = grown;
+		}
+		if (buckets[floor] == null) buckets[floor] = new ArrayDeque<MailItem>();
+		buckets[floor].addLast(mailItem);
+		if (floor < lowest) lowest = floor;
+		size++;
+	}
+
+	@Override
+	public MailItem peek() {
+		if (size == 0) return null;
+		while (buckets[lowest] == null || buckets[lowest].isEmpty()) lowest++;
+		return buckets[lowest].peekFirst();
+	}
+
+	@Override
+	public MailItem poll() {
+		MailItem head = peek();
+		if (head != null) {
+			buckets[lowest].pollFirst();
+			size--;
+			if (size == 0) lowest = buckets.length;
+		}
+		return head;
+	}
+
+	@Override
+	public void save(SnapshotOutput out) throws IOException {
+		out.writeInt(size);
+		for (ArrayDeque<MailItem> bucket : buckets) {
+			if (bucket == null) continue;
+			for (MailItem mailItem : bucket) out.writeMail(mailItem);
+		}
+	}
+
+	@Override
+	public void restore(SnapshotInput in) throws IOException {
+		for (int n = in.readInt(); n > 0; n--) add(in.readMail());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,130 @@
+package strategies;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import automail.Building;
+import automail.MailItem;
+import automail.MailStore;
+import automail.SnapshotInput;
+import automail.SnapshotOutput;
+
+/**
+ * FloorBuckets for mail kept in a MailStore. Each floor is a ring of int handles, so a
+ * deep pool costs four bytes an item, and a MailItem view is only made for the item at
+ * the head when the pool hands it out.
+ */
+class HandleBuckets implements PoolBuckets {
+
+	private final MailStore store;
+	private int[][] rings;
+	private int[] head;
+	private int[] count;
+	/** Lowest floor index that may hold mail, every ring below it is empty */
+	private int lowest;
+	private int size;
+	/** View of the item at the head of the lowest ring, made by peek */
+	private MailItem headView;
+
+	HandleBuckets(MailStore store, int floors) {
+		this.store = store;
+		floors = Math.max(floors, 1);
+		rings = new int[floors][];
+		head = new int[floors];
+		count = new int[floors];
+		lowest = floors;
+		size = 0;
+	}
+
+	/**
+	 * Adds an item from the store behind any other item for the same floor
+	 * @param handle the item's handle in the store
+	 */
+	void add(int handle) {
+		int floor = store.getDestFloor(handle) - Building.LOWEST_FLOOR;
+		if (floor >= rings.length) {
+			int n = Math.max(floor + 1, rings.length * 2);
+			if (lowest == rings.length) lowest = n;
+			rings = Arrays.copyOf(rings, n);
+			head = Arrays.copyOf(head, n);
+			count = Arrays.copyOf(count, n);
+		}
+		int[] ring = rings[floor];
+		if (ring == null) {
+			ring = rings[floor] = new int[16];
+		} else if (count[floor] == ring.length) {
+			int[] grown = new int[ring.length * 2];
+			int start = head[floor];
+			System.arraycopy(ring, start, grown, 0, ring.length - start);
+			System.arraycopy(ring, 0, grown, ring.length - start, start);
+			ring = rings[floor] = grown;
+			head[floor] = 0;
+		}
+		ring[(head[floor] + count[floor]) & (ring.length - 1)] = handle;
+		count[floor]++;
+		if (floor < lowest) {
+			lowest = floor;
+			headView = null;
+		}
+		size++;
+	}
+
+	/**
+	 * Items added as objects are robots returning mail from the same store
+	 */
+	@Override
+	public void add(MailItem mailItem) {
+		add(mailItem.getIndex());
+	}
+
+	@Override
+	public MailItem peek() {
+		if (size == 0) return null;
+		if (headView == null) {
+			while (count[lowest] == 0) lowest++;
+			headView = store.view(rings[lowest][head[lowest]]);
+		}
+		return headView;
+	}
+
+	@Override
+	public MailItem poll() {
+		MailItem item = peek();
+		if (item != null) {
+			head[lowest] = (head[lowest] + 1) & (rings[lowest].length - 1);
+			count[lowest]--;
+			size--;
+			if (size == 0) lowest = rings.length;
+			headView = null;
+		}
+		return item;
+	}
+
+	/**
+	 * Only handles are written, the store is saved with the simulation
+	 */
+	@Override
+	public void save(SnapshotOutput out) throws IOException {
+		out.writeInt(size);
+		for (int floor = 0; floor < rings.length; floor++) {
+			for (int i = 0; i < count[floor]; i++) {
+				out.writeInt(rings[floor][(head[floor] + i) & (rings[floor].length - 1)]);
+			}
+		}
+	}
+
+	@Override
+	public void restore(SnapshotInput in) throws IOException {
+		for (int n = in.readInt(); n > 0; n--) add(in.readInt());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -1,8 +1,6 @@
 package strategies;
 
-import automail.MailItem;
 import automail.NormalRobot;
-import automail.Robot;
 import exceptions.BreakingFragileItemException;
 import exceptions.ItemTooHeavyException;
 
@@ -12,13 +10,13 @@ import exceptions.ItemTooHeavyException;
  * The data structure and algorithms used in the MailPool is your choice.
  * 
  */
-public interface IMailPool {
-	
-	/**
-     * Adds an item to the mail pool
-     * @param mailItem the mail item being added.
+public interface IMailPool extends IRobotPool {
+
+    /**
+     * Adds an item held in the simulation's MailStore to the mail pool
+     * @param handle the item's handle in the store
      */
-    void addToPool(MailItem mailItem);
+    void addToPool(int handle);
     
     /**
      * load up any waiting robots with mailItems, if any.
@@ -26,8 +24,13 @@ public interface IMailPool {
 	void step() throws ItemTooHeavyException, BreakingFragileItemException;
 
 	/**
-     * @param robot refers to a robot which has arrived back ready for more mailItems to deliver
-     */	
-	void registerWaiting(Robot robot);
+	 * @return the number of items waiting in the pool
+	 */
+	int size();
+
+	/**
+	 * @return true if step() would do nothing, because no robot is waiting or there is no mail to give them
+	 */
+	boolean isIdle();
 
 }
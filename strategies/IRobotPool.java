@@ -0,0 +1,22 @@
+package strategies;
+
+import automail.MailItem;
+import automail.Robot;
+
+/**
+ * The part of the mail pool a robot uses: handing back mail it could not deliver and
+ * saying it is ready for more
+ */
+public interface IRobotPool {
+
+	/**
+	 * Adds an item to the mail pool
+	 * @param mailItem the mail item being added.
+	 */
+	void addToPool(MailItem mailItem);
+
+	/**
+	 * @param robot refers to a robot which has arrived back ready for more mailItems to deliver
+	 */
+	void registerWaiting(Robot robot);
+}
@@ -1,62 +1,65 @@
 package strategies;
 
-import java.util.LinkedList;
-import java.util.Comparator;
-import java.util.ListIterator;
+import java.io.IOException;
+import java.util.ArrayDeque;
 
+import automail.ICheckpointable;
 import automail.MailItem;
+import automail.MailStore;
 import automail.Robot;
+import automail.SimulationContext;
+import automail.SnapshotInput;
+import automail.SnapshotOutput;
 import exceptions.BreakingFragileItemException;
 import exceptions.ItemTooHeavyException;
 
-import static automail.Simulation.CAUTION_ENABLED;
-import static automail.Simulation.FRAGILE_ENABLED;
+public class MailPool implements IMailPool, ICheckpointable {
 
-public class MailPool implements IMailPool {
+	/** Pooled mail, handed out lowest destination first unless a subclass orders it otherwise */
+	private PoolBuckets pool;
+	private ArrayDeque<Robot> robots;
+	private final MailStore store;
+	private final boolean CAUTION_ENABLED;
+	private final boolean FRAGILE_ENABLED;
 
-	private class Item {
-		int destination;
-		MailItem mailItem;
-		
-		public Item(MailItem mailItem) {
-			destination = mailItem.getDestFloor();
-			this.mailItem = mailItem;
-		}
-	}
-	
-	public class ItemComparator implements Comparator<Item> {
-		@Override
-		public int compare(Item i1, Item i2) {
-			int order = 0;
-			if (i1.destination > i2.destination) {  // Further before closer
-				order = 1;
-			} else if (i1.destination < i2.destination) {
-				order = -1;
-			}
-			return order;
-		}
+	public MailPool(SimulationContext context){
+		this(context, context.getMailStore() == null ? new FloorBuckets(context.building.FLOORS)
+				: new HandleBuckets(context.getMailStore(), context.building.FLOORS));
 	}
-	
-	private LinkedList<Item> pool;
-	private LinkedList<Robot> robots;
 
-	public MailPool(int nrobots){
-		// Start empty
-		pool = new LinkedList<Item>();
-		robots = new LinkedList<Robot>();
+	/**
+	 * @param pool the order mail is handed out in, starting empty
+	 */
+	MailPool(SimulationContext context, PoolBuckets pool){
+		CAUTION_ENABLED = context.config.cautionEnabled;
+		FRAGILE_ENABLED = context.config.fragileEnabled;
+		store = context.getMailStore();
+		this.pool = pool;
+		robots = new ArrayDeque<Robot>(Math.max(context.config.robots, 1));
 	}
 
 	public void addToPool(MailItem mailItem) {
-		Item item = new Item(mailItem);
-		pool.add(item);
-		pool.sort(new ItemComparator());
+		pool.add(mailItem);
+	}
+
+	public void addToPool(int handle) {
+		if (pool instanceof HandleBuckets) {
+			((HandleBuckets) pool).add(handle);
+		} else if (store != null) {
+			pool.add(store.view(handle));
+		} else {
+			throw new IllegalStateException("Mail handles need a columnar mail store");
+		}
 	}
 	
 	@Override
 	public void step() throws ItemTooHeavyException, BreakingFragileItemException {
 		try{
-			ListIterator<Robot> i = robots.listIterator();
-			while (i.hasNext()) loadRobot(i);
+			/** A robot only leaves the queue once it has been given mail */
+			while (!robots.isEmpty() && !pool.isEmpty()) {
+				loadRobot(robots.peekFirst());
+				robots.pollFirst(); // remove from mailPool queue
+			}
 		} catch (Exception e) { 
             throw e; 
         } 
@@ -65,22 +68,19 @@ public class MailPool implements IMailPool {
 	/**
 	 * Initialize the MailPool
 	 * */
-	private void loadRobot(ListIterator<Robot> i) throws ItemTooHeavyException, BreakingFragileItemException{
-		Robot robot = i.next();
+	private void loadRobot(Robot robot) throws ItemTooHeavyException, BreakingFragileItemException{
 		assert(robot.isEmpty());
 		// System.out.printf("P: %3d%n", pool.size());
-		ListIterator<Item> j = pool.listIterator();
 		MailItem item;
 		if ((pool.size() > 0 && !FRAGILE_ENABLED) || (pool.size()>0 && FRAGILE_ENABLED && !CAUTION_ENABLED)) {
 			try {
-				robot.addToHand(j.next().mailItem); // hand first as we want higher priority delivered first
-				j.remove();
+				robot.addToHand(pool.peek()); // hand first as we want higher priority delivered first
+				pool.poll();
 				if (pool.size() > 0) {
-					robot.addToTube(j.next().mailItem);
-					j.remove();
+					robot.addToTube(pool.peek());
+					pool.poll();
 				}
 				robot.dispatch(); // send the robot off if it has any items to deliver
-				i.remove();       // remove from mailPool queue
 			} catch (Exception e) {
 				throw e;
 			}
@@ -88,7 +88,7 @@ public class MailPool implements IMailPool {
 		} else if (pool.size() > 0 && FRAGILE_ENABLED && CAUTION_ENABLED){
 			/** When caution mode is on and fragile items are involved */
 			try {
-				item = j.next().mailItem;
+				item = pool.peek();
 				for (int k = 0; k < 3 ; k++) {
 					/** stop the robot receiving mail if getting two fragile items continuously */
 					if (robot.getSpecialArms() != null && item.getFragile() && pool.size() > 0) {
@@ -98,9 +98,9 @@ public class MailPool implements IMailPool {
 					/** add fragile mail to special arm of the robot */
 					if (item.getFragile() && robot.getSpecialArms() == null) {
 						robot.addToSpecialHand(item);
-						j.remove();
+						pool.poll();
 						if(pool.size() > 0 ) {
-							item = j.next().mailItem;
+							item = pool.peek();
 							continue;
 						} else {
 							break;
@@ -110,9 +110,9 @@ public class MailPool implements IMailPool {
 					/** add normal mail to normal arm of the robot */
 					if (pool.size() > 0 && robot.getArms()== null) {
 						robot.addToHand(item);  // hand first as we want higher priority delivered first
-						j.remove();
+						pool.poll();
 						if(pool.size() > 0 ) {
-							item = j.next().mailItem;
+							item = pool.peek();
 							continue;
 						} else {
 							break;
@@ -122,9 +122,9 @@ public class MailPool implements IMailPool {
 					/** add normal mail to the tube of the robot if normal has item */
 					if (pool.size() > 0 && robot.getArms() != null && robot.getTube() == null) {
 						robot.addToTube(item);
-						j.remove();
+						pool.poll();
 						if(pool.size() > 0 ) {
-							item = j.next().mailItem;
+							item = pool.peek();
 							continue;
 						} else {
 							break;
@@ -133,16 +133,38 @@ public class MailPool implements IMailPool {
 
 				}
 				robot.dispatch(); // send the robot off if it has any items to deliver
-				i.remove();       // remove from mailPool queue
 			} catch (Exception e) {
 				throw e;
 			}
 		}
 	}
 
+	@Override
+	public int size() {
+		return pool.size();
+	}
+
+	@Override
+	public boolean isIdle() {
+		return robots.isEmpty() || pool.isEmpty();
+	}
+
 	@Override
 	public void registerWaiting(Robot robot) { // assumes won't be there already
-		robots.add(robot);
+		robots.addLast(robot);
+	}
+
+	@Override
+	public void save(SnapshotOutput out) throws IOException {
+		pool.save(out);
+		out.writeInt(robots.size());
+		for (Robot robot : robots) out.writeRobot(robot);
+	}
+
+	@Override
+	public void restore(SnapshotInput in) throws IOException {
+		pool.restore(in);
+		for (int n = in.readInt(); n > 0; n--) robots.addLast(in.readRobot());
 	}
 
 }
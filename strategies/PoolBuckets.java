@@ -0,0 +1,33 @@
+package strategies;
+
+import automail.ICheckpointable;
+import automail.MailItem;
+
+/**
+ * Holds the mail waiting in a MailPool and decides the order it is handed out in. Mail
+ * for the same floor always comes out in the order it went in, the order between floors
+ * is up to each implementation. Snapshots are only restored into empty buckets.
+ */
+interface PoolBuckets extends ICheckpointable {
+
+	/**
+	 * Adds an item behind any other item for the same floor
+	 * @param mailItem the mail item being added
+	 */
+	void add(MailItem mailItem);
+
+	/**
+	 * @return the next item to hand out, or null if the pool is empty
+	 */
+	MailItem peek();
+
+	/**
+	 * Removes and returns the next item to hand out
+	 * @return the removed item, or null if the pool is empty
+	 */
+	MailItem poll();
+
+	int size();
+
+	boolean isEmpty();
+}
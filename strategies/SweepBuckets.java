@@ -0,0 +1,94 @@
+package strategies;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+import automail.Building;
+import automail.MailItem;
+import automail.SnapshotInput;
+import automail.SnapshotOutput;
+
+/**
+ * Holds pooled mail in one FIFO bucket per floor and hands it out the way a lift
+ * answers calls: from a cursor floor upwards, only going back to the bottom once
+ * nothing is left above the cursor. Consecutive items are for the same or the next
+ * floors up, so a load's stops are close together, and mail for upper floors is not
+ * held back by a stream of mail for the lower ones.
+ */
+class SweepBuckets implements PoolBuckets {
+
+	private ArrayDeque<MailItem>[] buckets;
+	/** The floor index the sweep has reached */
+	private int cursor;
+	private int size;
+
+	SweepBuckets(int floors) {
+		buckets = newBuckets(Math.max(floors, 1));
+		cursor = 0;
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayDeque<MailItem>[] newBuckets(int n) {
+		return (ArrayDeque<MailItem>[]) new ArrayDeque<?>[n];
+	}
+
+	@Override
+	public void add(MailItem mailItem) {
+		int floor = mailItem.getDestFloor() - Building.LOWEST_FLOOR;
+		if (floor >= buckets.length) {
+			ArrayDeque<MailItem>[] grown = newBuckets(Math.max(floor + 1, buckets.length * 2));
+			System.arraycopy(buckets, 0, grown, 0, buckets.length);
+			buckets = grown;
+		}
+		if (buckets[floor] == null) buckets[floor] = new ArrayDeque<MailItem>();
+		buckets[floor].addLast(mailItem);
+		size++;
+	}
+
+	@Override
+	public MailItem peek() {
+		if (size == 0) return null;
+		while (buckets[cursor] == null || buckets[cursor].isEmpty()) {
+			cursor = cursor + 1 == buckets.length ? 0 : cursor + 1;
+		}
+		return buckets[cursor].peekFirst();
+	}
+
+	@Override
+	public MailItem poll() {
+		MailItem head = peek();
+		if (head != null) {
+			buckets[cursor].pollFirst();
+			size--;
+		}
+		return head;
+	}
+
+	@Override
+	public void save(SnapshotOutput out) throws IOException {
+		out.writeInt(cursor);
+		out.writeInt(size);
+		for (ArrayDeque<MailItem> bucket : buckets) {
+			if (bucket == null) continue;
+			for (MailItem mailItem : bucket) out.writeMail(mailItem);
+		}
+	}
+
+	@Override
+	public void restore(SnapshotInput in) throws IOException {
+		int at = in.readInt();
+		for (int n = in.readInt(); n > 0; n--) add(in.readMail());
+		cursor = at;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
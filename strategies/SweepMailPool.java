@@ -0,0 +1,15 @@
+package strategies;
+
+import automail.SimulationContext;
+
+/**
+ * Loads robots with mail for neighbouring floors, sweeping up the building from load to
+ * load rather than always starting from the lowest floor. Best used with Routing=sweep,
+ * so each robot also makes its stops in one pass up the shaft.
+ */
+public class SweepMailPool extends MailPool {
+
+	public SweepMailPool(SimulationContext context) {
+		super(context, new SweepBuckets(context.building.FLOORS));
+	}
+}